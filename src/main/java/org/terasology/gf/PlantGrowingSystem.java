@@ -15,6 +15,9 @@
  */
 package org.terasology.gf;
 
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.joml.Vector3f;
 import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -24,26 +27,52 @@ import org.terasology.engine.entitySystem.entity.EntityRef;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.delay.DelayManager;
 import org.terasology.engine.logic.delay.DelayedActionTriggeredEvent;
+import org.terasology.engine.logic.location.LocationComponent;
 import org.terasology.engine.monitoring.PerformanceMonitor;
+import org.terasology.engine.network.ClientComponent;
 import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.BlockComponent;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+import org.terasology.gf.generator.PlantGrowth;
 import org.terasology.gf.generator.PlantGrowthDefinition;
+import org.terasology.gf.tree.FellingTreeComponent;
 import org.terasology.gf.util.LocalParameters;
 import org.terasology.gf.util.StaticLocalParameters;
 import org.terasology.randomUpdate.RandomUpdateEvent;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
 /**
+ * Updates the plants when requested. Requested updates are queued and made within a budget of time and updates per
+ * tick, plants closest to the players first. Plants supporting it are grown in two phases - the growth is computed on a
+ * pool of worker threads, then applied to the world on the main thread, within the same budget.
+ *
  * @author Marcin Sciesinski <marcins78@gmail.com>
  */
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class PlantGrowingSystem extends BaseComponentSystem {
+@Share(PlantGrowingSystem.class)
+public class PlantGrowingSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
     public static final String UPDATE_PLANT_ACTION_ID = "GrowingFlora:updatePlant";
     private static final Logger logger = LoggerFactory.getLogger(PlantGrowingSystem.class);
+    private static final int GROWTH_THREADS = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    // Delay of the update kept scheduled while the update is queued or its growth computed, in case it is never made
+    private static final long PENDING_UPDATE_RETRY_DELAY = 10000;
+    private static final long DEFAULT_UPDATE_BUDGET_NANOS = 2000000;
+    private static final int DEFAULT_MAX_UPDATES_PER_TICK = 16;
 
     @In
     private WorldProvider worldProvider;
@@ -60,6 +89,98 @@ public class PlantGrowingSystem extends BaseComponentSystem {
     @In
     private EnvironmentParametersSystem environmentSystem;
 
+    private ExecutorService growthExecutor;
+    private final PlantUpdateScheduler updateScheduler = new PlantUpdateScheduler();
+    private final Map<EntityRef, PendingGrowth> pendingGrowths = new HashMap<>();
+    private final Queue<PendingGrowth> computedGrowths = new ConcurrentLinkedQueue<>();
+    private final List<Vector3f> playerPositions = new ArrayList<>();
+    private long updateBudgetNanos = DEFAULT_UPDATE_BUDGET_NANOS;
+    private int maxUpdatesPerTick = DEFAULT_MAX_UPDATES_PER_TICK;
+
+    @Override
+    public void initialise() {
+        growthExecutor = Executors.newFixedThreadPool(GROWTH_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("GrowingFlora-growth-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void shutdown() {
+        // Plants with an update still queued or pending keep their retry update scheduled
+        growthExecutor.shutdownNow();
+        updateScheduler.clear();
+        pendingGrowths.clear();
+        computedGrowths.clear();
+        playerPositions.clear();
+    }
+
+    /**
+     * Sets how much of every tick is spent updating plants. An update started within the budget is always finished, so
+     * the time spent may exceed the budget by the time of one update. Remaining updates wait for the following ticks.
+     *
+     * @param maxNanosPerTick time to stop starting new updates after
+     * @param maxUpdatesPerTick maximum number of plant updates and growths applied per tick
+     */
+    public void setUpdateBudget(long maxNanosPerTick, int maxUpdatesPerTick) {
+        Preconditions.checkArgument(maxNanosPerTick > 0, "Update budget must be positive");
+        Preconditions.checkArgument(maxUpdatesPerTick > 0, "Maximum updates per tick must be positive");
+        this.updateBudgetNanos = maxNanosPerTick;
+        this.maxUpdatesPerTick = maxUpdatesPerTick;
+    }
+
+    /**
+     * @return number of plants waiting for their requested update
+     */
+    public int getQueuedUpdateCount() {
+        return updateScheduler.size();
+    }
+
+    @Override
+    public void update(float delta) {
+        updatePlayerPositions();
+
+        long deadline = System.nanoTime() + updateBudgetNanos;
+        int updates = 0;
+        // Growths already computed are applied before new updates are started
+        while (updates < maxUpdatesPerTick && System.nanoTime() - deadline < 0) {
+            PendingGrowth pendingGrowth = computedGrowths.poll();
+            if (pendingGrowth == null) {
+                break;
+            }
+            applyGrowth(pendingGrowth);
+            updates++;
+        }
+        while (updates < maxUpdatesPerTick && System.nanoTime() - deadline < 0) {
+            EntityRef plant = updateScheduler.poll();
+            if (plant == null) {
+                break;
+            }
+            updateQueuedPlant(plant);
+            updates++;
+        }
+    }
+
+    private void updatePlayerPositions() {
+        playerPositions.clear();
+        for (EntityRef client : entityManager.getEntitiesWith(ClientComponent.class)) {
+            EntityRef character = client.getComponent(ClientComponent.class).character;
+            LocationComponent location = character.getComponent(LocationComponent.class);
+            if (location != null) {
+                playerPositions.add(location.getWorldPosition(new Vector3f()));
+            }
+        }
+    }
+
+    /**
+     * @return square of the distance from the position to the closest player, or max value if there are no players
+     */
+    private float getUpdatePriority(Vector3ic position) {
+        float priority = Float.MAX_VALUE;
+        for (Vector3f playerPosition : playerPositions) {
+            priority = Math.min(priority, playerPosition.distanceSquared(position.x(), position.y(), position.z()));
+        }
+        return priority;
+    }
+
     private LocalParameters createLocalParameters(Vector3ic position) {
         if (environmentSystem != null) {
             return environmentSystem.createLocalParameters(position);
@@ -71,16 +192,47 @@ public class PlantGrowingSystem extends BaseComponentSystem {
     @ReceiveEvent
     public void updatePlant(DelayedActionTriggeredEvent event, EntityRef plant, LivingPlantComponent plantComponent, BlockComponent blockComponent) {
         if (event.getActionId().equals(UPDATE_PLANT_ACTION_ID)) {
-            PerformanceMonitor.startActivity("GrowingFlora - Updating plant");
-            try {
-                PlantGrowthDefinition plantDefinition = plantRegistry.getPlantGrowthDefinition(plantComponent.type);
-                Long updateDelay = plantDefinition.requestedUpdatePlant(worldProvider, createLocalParameters(blockComponent.getPosition()), blockEntityRegistry, plant);
-                if (updateDelay != null) {
-                    delayManager.addDelayedAction(plant, UPDATE_PLANT_ACTION_ID, updateDelay);
-                }
-            } finally {
-                PerformanceMonitor.endActivity();
+            // Queued updates are not persisted, the plant keeps an update scheduled until it is updated
+            delayManager.addDelayedAction(plant, UPDATE_PLANT_ACTION_ID, PENDING_UPDATE_RETRY_DELAY);
+            if (!pendingGrowths.containsKey(plant)) {
+                updateScheduler.schedule(plant, getUpdatePriority(blockComponent.getPosition()));
+            }
+        }
+    }
+
+    private void updateQueuedPlant(EntityRef plant) {
+        LivingPlantComponent plantComponent = plant.getComponent(LivingPlantComponent.class);
+        BlockComponent blockComponent = plant.getComponent(BlockComponent.class);
+        if (!plant.exists() || plantComponent == null || blockComponent == null) {
+            return;
+        }
+        if (plant.hasComponent(FellingTreeComponent.class)) {
+            // The tree is being felled, try again once it is done
+            rescheduleUpdate(plant, PENDING_UPDATE_RETRY_DELAY);
+            return;
+        }
+
+        PerformanceMonitor.startActivity("GrowingFlora - Updating plant");
+        try {
+            PlantGrowthDefinition plantDefinition = plantRegistry.getPlantGrowthDefinition(plantComponent.type);
+            LocalParameters localParameters = createLocalParameters(blockComponent.getPosition());
+            Supplier<PlantGrowth> growthComputation = plantDefinition.prepareUpdatePlant(worldProvider, localParameters, blockEntityRegistry, plant);
+            if (growthComputation != null) {
+                startGrowth(plant, growthComputation);
+            } else {
+                rescheduleUpdate(plant, plantDefinition.requestedUpdatePlant(worldProvider, localParameters, blockEntityRegistry, plant));
             }
+        } finally {
+            PerformanceMonitor.endActivity();
+        }
+    }
+
+    private void rescheduleUpdate(EntityRef plant, Long updateDelay) {
+        if (delayManager.hasDelayedAction(plant, UPDATE_PLANT_ACTION_ID)) {
+            delayManager.cancelDelayedAction(plant, UPDATE_PLANT_ACTION_ID);
+        }
+        if (updateDelay != null) {
+            delayManager.addDelayedAction(plant, UPDATE_PLANT_ACTION_ID, updateDelay);
         }
     }
 
@@ -90,6 +242,8 @@ public class PlantGrowingSystem extends BaseComponentSystem {
         try {
             PlantGrowthDefinition plantDefinition = plantRegistry.getPlantGrowthDefinition(plantComponent.type);
             if (plantDefinition.randomUpdatePlant(worldProvider, createLocalParameters(blockComponent.getPosition()), blockEntityRegistry, plant)) {
+                updateScheduler.remove(plant);
+                pendingGrowths.remove(plant);
                 if (delayManager.hasDelayedAction(plant, UPDATE_PLANT_ACTION_ID)) {
                     delayManager.cancelDelayedAction(plant, UPDATE_PLANT_ACTION_ID);
                 }
@@ -98,4 +252,65 @@ public class PlantGrowingSystem extends BaseComponentSystem {
             PerformanceMonitor.endActivity();
         }
     }
+
+    private void startGrowth(EntityRef plant, Supplier<PlantGrowth> growthComputation) {
+        PendingGrowth pendingGrowth = new PendingGrowth(plant, growthComputation);
+        pendingGrowths.put(plant, pendingGrowth);
+        growthExecutor.execute(() -> {
+            pendingGrowth.compute();
+            computedGrowths.add(pendingGrowth);
+        });
+    }
+
+    private void applyGrowth(PendingGrowth pendingGrowth) {
+        EntityRef plant = pendingGrowth.plant;
+        if (!pendingGrowths.remove(plant, pendingGrowth)) {
+            // Growth was cancelled by a random update
+            return;
+        }
+        LivingPlantComponent plantComponent = plant.getComponent(LivingPlantComponent.class);
+        BlockComponent blockComponent = plant.getComponent(BlockComponent.class);
+        if (!plant.exists() || plantComponent == null || blockComponent == null) {
+            return;
+        }
+        if (plant.hasComponent(FellingTreeComponent.class)) {
+            // The growth was computed before the tree started being felled
+            rescheduleUpdate(plant, PENDING_UPDATE_RETRY_DELAY);
+            return;
+        }
+
+        PerformanceMonitor.startActivity("GrowingFlora - Growing plant");
+        try {
+            Long updateDelay;
+            if (pendingGrowth.growth != null) {
+                updateDelay = pendingGrowth.growth.apply(worldProvider, blockEntityRegistry, plant);
+            } else {
+                // Computing the growth failed, update the plant on the main thread instead
+                PlantGrowthDefinition plantDefinition = plantRegistry.getPlantGrowthDefinition(plantComponent.type);
+                updateDelay = plantDefinition.requestedUpdatePlant(worldProvider, createLocalParameters(blockComponent.getPosition()), blockEntityRegistry, plant);
+            }
+            rescheduleUpdate(plant, updateDelay);
+        } finally {
+            PerformanceMonitor.endActivity();
+        }
+    }
+
+    private static final class PendingGrowth {
+        private final EntityRef plant;
+        private final Supplier<PlantGrowth> growthComputation;
+        private volatile PlantGrowth growth;
+
+        private PendingGrowth(EntityRef plant, Supplier<PlantGrowth> growthComputation) {
+            this.plant = plant;
+            this.growthComputation = growthComputation;
+        }
+
+        private void compute() {
+            try {
+                growth = growthComputation.get();
+            } catch (RuntimeException e) {
+                logger.error("Failed to compute the growth of a plant", e);
+            }
+        }
+    }
 }
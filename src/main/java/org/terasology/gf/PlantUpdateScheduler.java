@@ -0,0 +1,82 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Plants waiting for their requested update, polled in the order of their priority. Plants with the same priority are
+ * polled in the order they were scheduled.
+ */
+final class PlantUpdateScheduler {
+    private static final Comparator<ScheduledUpdate> UPDATE_ORDER = Comparator.<ScheduledUpdate>comparingDouble(update -> update.priority)
+            .thenComparingLong(update -> update.sequence);
+
+    private final PriorityQueue<ScheduledUpdate> queue = new PriorityQueue<>(UPDATE_ORDER);
+    private final Map<EntityRef, ScheduledUpdate> scheduledUpdates = new HashMap<>();
+    private long nextSequence;
+
+    public int size() {
+        return scheduledUpdates.size();
+    }
+
+    public boolean isScheduled(EntityRef plant) {
+        return scheduledUpdates.containsKey(plant);
+    }
+
+    /**
+     * Schedules the update of the plant, unless it is already scheduled.
+     *
+     * @param priority lower values are polled first
+     * @return true if the update was scheduled
+     */
+    public boolean schedule(EntityRef plant, float priority) {
+        if (scheduledUpdates.containsKey(plant)) {
+            return false;
+        }
+        ScheduledUpdate update = new ScheduledUpdate(plant, priority, nextSequence++);
+        scheduledUpdates.put(plant, update);
+        queue.add(update);
+        return true;
+    }
+
+    public void remove(EntityRef plant) {
+        // Removed updates are left in the queue and skipped when polled
+        scheduledUpdates.remove(plant);
+    }
+
+    /**
+     * @return plant with the lowest priority, or <code>null</code> if no plant is scheduled
+     */
+    public EntityRef poll() {
+        ScheduledUpdate update;
+        while ((update = queue.poll()) != null) {
+            if (scheduledUpdates.remove(update.plant, update)) {
+                return update.plant;
+            }
+        }
+        return null;
+    }
+
+    public void clear() {
+        queue.clear();
+        scheduledUpdates.clear();
+    }
+
+    private static final class ScheduledUpdate {
+        private final EntityRef plant;
+        private final float priority;
+        private final long sequence;
+
+        private ScheduledUpdate(EntityRef plant, float priority, long sequence) {
+            this.plant = plant;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+    }
+}
@@ -0,0 +1,86 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import com.google.common.base.Preconditions;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.facets.base.BaseFacet3D;
+
+import java.util.Arrays;
+
+/**
+ * Ground that flora can be placed on, with the same content as {@link FloraFacet}, stored by column.
+ * <p>
+ * The random seed depends only on the column, so it is stored once per column, followed by the heights of all the
+ * candidate positions in the column. Nothing is allocated per position, neither when filling the facet nor when
+ * iterating it.
+ */
+public class DenseFloraFacet extends BaseFacet3D {
+    private final int minX;
+    private final int minZ;
+    private final int sizeZ;
+    private final int columnCount;
+
+    // Candidates of column i are stored from columnStarts[i] to columnStarts[i + 1], for the filled columns
+    private final int[] columnStarts;
+    private final float[] seeds;
+    private int filledColumns;
+    private int[] heights = new int[16];
+    private int size;
+
+    public DenseFloraFacet(BlockRegionc targetRegion, Border3D border) {
+        super(targetRegion, border);
+        BlockRegionc worldRegion = getWorldRegion();
+        minX = worldRegion.minX();
+        minZ = worldRegion.minZ();
+        sizeZ = worldRegion.getSizeZ();
+        columnCount = worldRegion.getSizeX() * sizeZ;
+        columnStarts = new int[columnCount + 1];
+        seeds = new float[columnCount];
+    }
+
+    public int getCandidateCount() {
+        return size;
+    }
+
+    /**
+     * Adds a position plants can be placed at. Positions have to be added column by column, with x in the outer and z
+     * in the inner loop.
+     */
+    public void addCandidate(int x, int y, int z, float seed) {
+        int column = (x - minX) * sizeZ + z - minZ;
+        Preconditions.checkArgument(column >= filledColumns - 1 && column < columnCount, "Candidates added out of order");
+        while (filledColumns <= column) {
+            columnStarts[filledColumns++] = size;
+        }
+        if (size == heights.length) {
+            heights = Arrays.copyOf(heights, size * 2);
+        }
+        heights[size++] = y;
+        seeds[column] = seed;
+    }
+
+    /**
+     * Visits all the candidate positions, column by column.
+     */
+    public void forEach(CandidateVisitor visitor) {
+        for (int column = 0; column < filledColumns; column++) {
+            int end = column + 1 < filledColumns ? columnStarts[column + 1] : size;
+            int start = columnStarts[column];
+            if (start == end) {
+                continue;
+            }
+            int x = minX + column / sizeZ;
+            int z = minZ + column % sizeZ;
+            float seed = seeds[column];
+            for (int i = start; i < end; i++) {
+                visitor.visit(x, heights[i], z, seed);
+            }
+        }
+    }
+
+    public interface CandidateVisitor {
+        void visit(int x, int y, int z, float seed);
+    }
+}
@@ -0,0 +1,62 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.terasology.engine.utilities.procedural.WhiteNoise;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.generation.Facet;
+import org.terasology.engine.world.generation.FacetBorder;
+import org.terasology.engine.world.generation.FacetProvider;
+import org.terasology.engine.world.generation.GeneratingRegion;
+import org.terasology.engine.world.generation.Produces;
+import org.terasology.engine.world.generation.Requires;
+import org.terasology.engine.world.generation.facets.SurfacesFacet;
+
+/**
+ * Determines that ground that flora can be placed on, as {@link FloraProvider} does, into a {@link DenseFloraFacet}
+ */
+@Produces(DenseFloraFacet.class)
+@Requires(@Facet(value = SurfacesFacet.class, border = @FacetBorder(bottom = 1)))
+public class DenseFloraProvider implements FacetProvider {
+
+    private WhiteNoise noiseTable;
+    private int seaLevel;
+
+    public DenseFloraProvider(int seaLevel) {
+        this.seaLevel = seaLevel;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        noiseTable = new WhiteNoise(seed);
+    }
+
+    @Override
+    public void process(GeneratingRegion region) {
+        DenseFloraFacet facet = new DenseFloraFacet(region.getRegion(), region.getBorderForFacet(DenseFloraFacet.class));
+        SurfacesFacet surface = region.getRegionFacet(SurfacesFacet.class);
+
+        BlockRegionc worldRegion = facet.getWorldRegion();
+        int minX = worldRegion.minX();
+        int minZ = worldRegion.minZ();
+        int maxX = worldRegion.maxX();
+        int maxZ = worldRegion.maxZ();
+
+        for (int x = minX; x <= maxX; x++) {
+            for (int z = minZ; z <= maxZ; z++) {
+                float seed = Float.NaN;
+                for (int height : surface.getWorldColumn(x, z)) {
+                    // if the surface is in range, and if we are above sea level
+                    if (worldRegion.contains(x, height, z) && worldRegion.contains(x, height + 1, z) && height >= seaLevel) {
+                        if (Float.isNaN(seed)) {
+                            seed = noiseTable.noise(x, z) / 256f;
+                        }
+                        facet.addCandidate(x, height, z, seed);
+                    }
+                }
+            }
+        }
+
+        region.setRegionFacet(DenseFloraFacet.class, facet);
+    }
+}
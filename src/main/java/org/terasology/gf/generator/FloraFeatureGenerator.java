@@ -2,6 +2,7 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.gf.generator;
 
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Multimap;
 import com.google.common.collect.Ordering;
 import com.google.common.collect.TreeMultimap;
@@ -9,8 +10,7 @@ import org.joml.Vector3ic;
 import org.terasology.biomesAPI.Biome;
 import org.terasology.core.world.generator.facets.BiomeFacet;
 import org.terasology.engine.registry.CoreRegistry;
-import org.terasology.engine.utilities.random.FastRandom;
-import org.terasology.engine.utilities.random.Random;
+import org.terasology.engine.world.block.BlockRegionc;
 import org.terasology.engine.world.chunks.Chunk;
 import org.terasology.engine.world.generation.Region;
 import org.terasology.engine.world.generation.WorldRasterizer;
@@ -18,36 +18,59 @@ import org.terasology.engine.world.generator.plugin.WorldGeneratorPluginLibrary;
 import org.terasology.gestalt.naming.Name;
 import org.terasology.gf.PlantRegistry;
 import org.terasology.gf.PlantType;
-import org.terasology.engine.utilities.random.DiscreteDistribution;
+import org.terasology.gf.tree.lsystem.LSystemBasedTreeGrowthDefinition;
+import org.terasology.gf.util.ReseedableRandom;
+import org.terasology.gf.util.WeightedSampler;
 
+import java.util.Arrays;
 import java.util.Comparator;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
 
 public class FloraFeatureGenerator implements WorldRasterizer {
 
+    private static final WeightedSampler<PlantSpawnDefinition> NO_DEFINITIONS = WeightedSampler.<PlantSpawnDefinition>builder().build();
+
     private Multimap<Name, PlantSpawnDefinition> treeDefinitions = TreeMultimap.create(Ordering.natural(),
             Comparator.comparing(PlantSpawnDefinition::getPlantId));
-    private Map<Name, DiscreteDistribution<PlantSpawnDefinition>> treeDefinitionsCache = new HashMap<>();
-
     private Multimap<Name, PlantSpawnDefinition> bushDefinitions = TreeMultimap.create(Ordering.natural(),
             Comparator.comparing(PlantSpawnDefinition::getPlantId));
-    private Map<Name, DiscreteDistribution<PlantSpawnDefinition>> bushDefinitionsCache = new HashMap<>();
-
     private Multimap<Name, PlantSpawnDefinition> foliageDefinitions = TreeMultimap.create(Ordering.natural(),
             Comparator.comparing(PlantSpawnDefinition::getPlantId));
-    private Map<Name, DiscreteDistribution<PlantSpawnDefinition>> foliageDefinitionsCache = new HashMap<>();
+
+    private final ThreadLocal<ChunkFloraState> chunkStates = ThreadLocal.withInitial(ChunkFloraState::new);
+
+    // Immutable sampling tables per biome, built in initialize() and only read by the chunk generation threads
+    private volatile Map<Name, WeightedSampler<PlantSpawnDefinition>> treeSamplers = ImmutableMap.of();
+    private volatile Map<Name, WeightedSampler<PlantSpawnDefinition>> bushSamplers = ImmutableMap.of();
+    private volatile Map<Name, WeightedSampler<PlantSpawnDefinition>> foliageSamplers = ImmutableMap.of();
+
+    // Pool computing the plants of a chunk in parallel, or null to generate them on the calling thread
+    private final ForkJoinPool parallelPool;
+    private final ThreadLocal<ReseedableRandom> parallelRandoms = ThreadLocal.withInitial(() -> new ReseedableRandom(0));
 
     public FloraFeatureGenerator() {
+        this(false);
+    }
+
+    /**
+     * @param parallel if <code>true</code>, the plants of a chunk are chosen and trees are generated in parallel on the
+     *                 common fork-join pool, the chunk is then modified in the same order as by the sequential
+     *                 generation, so the result is identical
+     */
+    public FloraFeatureGenerator(boolean parallel) {
+        this.parallelPool = parallel ? ForkJoinPool.commonPool() : null;
     }
 
     @Override
     public void initialize() {
         loadPlantGrowthDefinitions();
         loadPlantSpawnDefinition();
+        treeSamplers = createSamplers(treeDefinitions);
+        bushSamplers = createSamplers(bushDefinitions);
+        foliageSamplers = createSamplers(foliageDefinitions);
     }
 
     private void loadPlantGrowthDefinitions() {
@@ -57,6 +80,9 @@ public class FloraFeatureGenerator implements WorldRasterizer {
         List<PlantGrowthDefinition> plantGrowthDefinitions = pluginLibrary.instantiateAllOfType(PlantGrowthDefinition.class);
         for (PlantGrowthDefinition plantGrowthDefinition : plantGrowthDefinitions) {
             plantRegistry.addPlantType(plantGrowthDefinition.getPlantId(), plantGrowthDefinition);
+            if (plantGrowthDefinition instanceof LSystemBasedTreeGrowthDefinition) {
+                ((LSystemBasedTreeGrowthDefinition) plantGrowthDefinition).prepareTemplates(ForkJoinPool.commonPool());
+            }
         }
     }
 
@@ -78,84 +104,247 @@ public class FloraFeatureGenerator implements WorldRasterizer {
 
     @Override
     public void generateChunk(Chunk chunk, Region chunkRegion) {
+        ChunkFloraState state = chunkStates.get();
+        state.reset(chunkRegion.getRegion(), chunkRegion.getFacet(BiomeFacet.class));
+        try {
+            if (parallelPool != null) {
+                generateChunkInParallel(chunk, chunkRegion, state);
+            } else {
+                collectPlants(chunkRegion, state, (samplers, x, y, z, value) -> generatePlant(samplers, state, value, chunk, x, y, z, chunkRegion));
+            }
+        } finally {
+            state.clear();
+        }
+    }
+
+    /**
+     * Passes the plant positions of the chunk to the consumer, in the order the plants have to be generated in.
+     */
+    private void collectPlants(Region chunkRegion, ChunkFloraState state, PlantPositionConsumer consumer) {
+        Map<Name, WeightedSampler<PlantSpawnDefinition>> trees = treeSamplers;
+        Map<Name, WeightedSampler<PlantSpawnDefinition>> bushes = bushSamplers;
+        Map<Name, WeightedSampler<PlantSpawnDefinition>> foliage = foliageSamplers;
+
+        // Every position of the combined facet is already classified as a single plant type
+        FloraPlacementFacet placementFacet = chunkRegion.getFacet(FloraPlacementFacet.class);
+        if (placementFacet != null) {
+            placementFacet.forEachPlacement(FloraPlacementFacet.TREE, (x, y, z, seed) -> consumer.accept(trees, x, y, z, seed));
+            placementFacet.forEachPlacement(FloraPlacementFacet.BUSH, (x, y, z, seed) -> consumer.accept(bushes, x, y, z, seed));
+            placementFacet.forEachPlacement(FloraPlacementFacet.FOLIAGE, (x, y, z, seed) -> consumer.accept(foliage, x, y, z, seed));
+            return;
+        }
+
         TreeFacet treeFacet = chunkRegion.getFacet(TreeFacet.class);
         BushFacet bushFacet = chunkRegion.getFacet(BushFacet.class);
         FoliageFacet foliageFacet = chunkRegion.getFacet(FoliageFacet.class);
-        BiomeFacet biomeFacet = chunkRegion.getFacet(BiomeFacet.class);
-
-        Set<Vector3ic> usedPositions = new HashSet<>();
 
         // First, generate trees, as these are the rarest ones
         for (Map.Entry<Vector3ic, Float> positionEntry : treeFacet.getWorldEntries().entrySet()) {
             Vector3ic position = positionEntry.getKey();
-            float value = positionEntry.getValue();
-
-            Biome biome = biomeFacet.getWorld(position.x(), position.z());
-
-            long seed = Float.floatToRawIntBits(value);
-            Random random = new FastRandom(seed);
-            DiscreteDistribution<PlantSpawnDefinition> definitionsForBiome = getDefinitionsForBiome(biome, treeDefinitionsCache, treeDefinitions);
-            PlantSpawnDefinition treeDefinition = definitionsForBiome.sample(random);
-            if (treeDefinition != null && random.nextFloat() < treeDefinition.getProbability()) {
-                treeDefinition.generatePlant(seed, chunk, position.x(), position.y(), position.z(), chunkRegion);
-            }
+            consumer.accept(trees, position.x(), position.y(), position.z(), positionEntry.getValue());
 
-            usedPositions.add(position);
+            state.occupy(position.x(), position.y(), position.z());
         }
 
         // Second, generate bushes, as these are a bit more common
         for (Map.Entry<Vector3ic, Float> positionEntry : bushFacet.getWorldEntries().entrySet()) {
             Vector3ic position = positionEntry.getKey();
-            if (!usedPositions.contains(position)) {
-                float value = positionEntry.getValue();
-
-                Biome biome = biomeFacet.getWorld(position.x(), position.z());
-
-                long seed = Float.floatToRawIntBits(value);
-                Random random = new FastRandom(seed);
-                DiscreteDistribution<PlantSpawnDefinition> definitionsForBiome = getDefinitionsForBiome(biome, bushDefinitionsCache, bushDefinitions);
-                PlantSpawnDefinition bushDefinition = definitionsForBiome.sample(random);
-                if (bushDefinition != null && random.nextFloat() < bushDefinition.getProbability()) {
-                    bushDefinition.generatePlant(seed, chunk, position.x(), position.y(), position.z(), chunkRegion);
-                }
-
-                usedPositions.add(position);
+            if (state.occupy(position.x(), position.y(), position.z())) {
+                consumer.accept(bushes, position.x(), position.y(), position.z(), positionEntry.getValue());
             }
         }
 
         // Third, generate grass and flowers, as these are the most common
         for (Map.Entry<Vector3ic, Float> positionEntry : foliageFacet.getWorldEntries().entrySet()) {
             Vector3ic position = positionEntry.getKey();
-            if (!usedPositions.contains(position)) {
-                float value = positionEntry.getValue();
+            if (state.occupy(position.x(), position.y(), position.z())) {
+                consumer.accept(foliage, position.x(), position.y(), position.z(), positionEntry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Chooses the plants and prepares them in parallel, then generates them into the chunk on the calling thread, in the
+     * same order as the sequential generation.
+     */
+    private void generateChunkInParallel(Chunk chunk, Region chunkRegion, ChunkFloraState state) {
+        PlantPositions positions = new PlantPositions();
+        collectPlants(chunkRegion, state, positions::add);
+
+        int count = positions.count;
+        BiomeFacet biomeFacet = state.biomeFacet;
+        PlantSpawnDefinition[] chosen = new PlantSpawnDefinition[count];
+        parallelPool.submit(() -> IntStream.range(0, count).parallel().forEach(i -> {
+            int x = positions.x[i];
+            int y = positions.y[i];
+            int z = positions.z[i];
+            long seed = Float.floatToRawIntBits(positions.values[i]);
+            PlantSpawnDefinition definition = choosePlant(positions.samplers[i], biomeFacet.getWorld(x, z), seed, parallelRandoms.get());
+            if (definition != null) {
+                definition.preparePlant(seed, x, y, z, chunkRegion);
+                chosen[i] = definition;
+            }
+        })).join();
+
+        for (int i = 0; i < count; i++) {
+            if (chosen[i] != null) {
+                chosen[i].generatePlant(Float.floatToRawIntBits(positions.values[i]), chunk, positions.x[i], positions.y[i], positions.z[i], chunkRegion);
+            }
+        }
+    }
+
+    private void generatePlant(Map<Name, WeightedSampler<PlantSpawnDefinition>> samplers, ChunkFloraState state, float value,
+                               Chunk chunk, int x, int y, int z, Region chunkRegion) {
+        long seed = Float.floatToRawIntBits(value);
+        PlantSpawnDefinition definition = choosePlant(samplers, state.getBiome(x, z), seed, state.random);
+        if (definition != null) {
+            definition.generatePlant(seed, chunk, x, y, z, chunkRegion);
+        }
+    }
+
+    /**
+     * @return the plant to generate at a position of the biome, or <code>null</code> if none should be generated
+     */
+    private static PlantSpawnDefinition choosePlant(Map<Name, WeightedSampler<PlantSpawnDefinition>> samplers, Biome biome, long seed,
+                                                    ReseedableRandom random) {
+        random.setSeed(seed);
+        PlantSpawnDefinition definition = getDefinitionsForBiome(biome, samplers).sample(random);
+        if (definition != null && random.nextFloat() < definition.getProbability()) {
+            return definition;
+        }
+        return null;
+    }
+
+    private static Map<Name, WeightedSampler<PlantSpawnDefinition>> createSamplers(Multimap<Name, PlantSpawnDefinition> definitions) {
+        ImmutableMap.Builder<Name, WeightedSampler<PlantSpawnDefinition>> result = ImmutableMap.builder();
+        for (Name biomeId : definitions.keySet()) {
+            WeightedSampler.Builder<PlantSpawnDefinition> sampler = WeightedSampler.builder();
+            for (PlantSpawnDefinition floraDefinition : definitions.get(biomeId)) {
+                sampler.add(floraDefinition, floraDefinition.getRarity());
+            }
+            result.put(biomeId, sampler.build());
+        }
+        return result.build();
+    }
+
+    private static WeightedSampler<PlantSpawnDefinition> getDefinitionsForBiome(Biome biome, Map<Name, WeightedSampler<PlantSpawnDefinition>> samplers) {
+        return samplers.getOrDefault(biome.getId(), NO_DEFINITIONS);
+    }
 
-                Biome biome = biomeFacet.getWorld(position.x(), position.z());
+    private interface PlantPositionConsumer {
+        void accept(Map<Name, WeightedSampler<PlantSpawnDefinition>> samplers, int x, int y, int z, float value);
+    }
+
+    /**
+     * Plant positions of a chunk in the order of generation, with the samplers of the plant type to choose from.
+     */
+    private static final class PlantPositions {
+        private Map<Name, WeightedSampler<PlantSpawnDefinition>>[] samplers = newSamplersArray(16);
+        private int[] x = new int[16];
+        private int[] y = new int[16];
+        private int[] z = new int[16];
+        private float[] values = new float[16];
+        private int count;
 
-                long seed = Float.floatToRawIntBits(value);
-                Random random = new FastRandom(seed);
-                DiscreteDistribution<PlantSpawnDefinition> definitionsForBiome = getDefinitionsForBiome(biome, foliageDefinitionsCache, foliageDefinitions);
-                PlantSpawnDefinition foliageDefinition = definitionsForBiome.sample(random);
-                if (foliageDefinition != null && random.nextFloat() < foliageDefinition.getProbability()) {
-                    foliageDefinition.generatePlant(seed, chunk, position.x(), position.y(), position.z(), chunkRegion);
-                }
+        @SuppressWarnings("unchecked")
+        private static Map<Name, WeightedSampler<PlantSpawnDefinition>>[] newSamplersArray(int length) {
+            return new Map[length];
+        }
 
-                usedPositions.add(position);
+        private void add(Map<Name, WeightedSampler<PlantSpawnDefinition>> plantSamplers, int plantX, int plantY, int plantZ, float value) {
+            if (count == x.length) {
+                int capacity = count * 2;
+                samplers = Arrays.copyOf(samplers, capacity);
+                x = Arrays.copyOf(x, capacity);
+                y = Arrays.copyOf(y, capacity);
+                z = Arrays.copyOf(z, capacity);
+                values = Arrays.copyOf(values, capacity);
             }
+            samplers[count] = plantSamplers;
+            x[count] = plantX;
+            y[count] = plantY;
+            z[count] = plantZ;
+            values[count] = value;
+            count++;
         }
     }
 
-    private DiscreteDistribution<PlantSpawnDefinition> getDefinitionsForBiome(Biome biome, Map<Name,
-            DiscreteDistribution<PlantSpawnDefinition>> cache, Multimap<Name, PlantSpawnDefinition> definitions) {
-        DiscreteDistribution<PlantSpawnDefinition> result = cache.get(biome.getId());
-        if (result != null) {
-            return result;
+    /**
+     * State reused by a chunk generation thread from one chunk to the next: the positions of the chunk already taken by
+     * a plant, the biomes of its columns and the random the plants are chosen with.
+     */
+    private static final class ChunkFloraState {
+        private final ReseedableRandom random = new ReseedableRandom(0);
+        private long[] occupied = new long[0];
+        private Biome[] biomes = new Biome[0];
+        private BiomeFacet biomeFacet;
+        private int minX;
+        private int minY;
+        private int minZ;
+        private int sizeX;
+        private int sizeY;
+        private int sizeZ;
+
+        private void reset(BlockRegionc region, BiomeFacet chunkBiomeFacet) {
+            biomeFacet = chunkBiomeFacet;
+            minX = region.minX();
+            minY = region.minY();
+            minZ = region.minZ();
+            sizeX = region.getSizeX();
+            sizeY = region.getSizeY();
+            sizeZ = region.getSizeZ();
+
+            int occupiedLength = (sizeX * sizeY * sizeZ + 63) >>> 6;
+            if (occupied.length < occupiedLength) {
+                occupied = new long[occupiedLength];
+            } else {
+                Arrays.fill(occupied, 0, occupiedLength, 0);
+            }
+            int columnCount = sizeX * sizeZ;
+            if (biomes.length < columnCount) {
+                biomes = new Biome[columnCount];
+            }
         }
 
-        result = new DiscreteDistribution<>();
-        for (PlantSpawnDefinition floraDefinition : definitions.get(biome.getId())) {
-            result.add(floraDefinition, floraDefinition.getRarity());
+        private void clear() {
+            biomeFacet = null;
+            Arrays.fill(biomes, null);
+        }
+
+        /**
+         * Marks the position as taken. Positions outside of the chunk are not tracked, only trees are placed there.
+         *
+         * @return <code>false</code>, if the position was already taken
+         */
+        private boolean occupy(int x, int y, int z) {
+            int relativeX = x - minX;
+            int relativeY = y - minY;
+            int relativeZ = z - minZ;
+            if (relativeX < 0 || relativeX >= sizeX || relativeY < 0 || relativeY >= sizeY || relativeZ < 0 || relativeZ >= sizeZ) {
+                return true;
+            }
+            int bit = (relativeY * sizeZ + relativeZ) * sizeX + relativeX;
+            long mask = 1L << bit;
+            if ((occupied[bit >>> 6] & mask) != 0) {
+                return false;
+            }
+            occupied[bit >>> 6] |= mask;
+            return true;
+        }
+
+        private Biome getBiome(int x, int z) {
+            int relativeX = x - minX;
+            int relativeZ = z - minZ;
+            if (relativeX < 0 || relativeX >= sizeX || relativeZ < 0 || relativeZ >= sizeZ) {
+                return biomeFacet.getWorld(x, z);
+            }
+            int column = relativeZ * sizeX + relativeX;
+            Biome biome = biomes[column];
+            if (biome == null) {
+                biome = biomeFacet.getWorld(x, z);
+                biomes[column] = biome;
+            }
+            return biome;
         }
-        cache.put(biome.getId(), result);
-        return result;
     }
 }
@@ -0,0 +1,96 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.facets.base.BaseFacet3D;
+
+/**
+ * Flora positions classified as trees, bushes or foliage, together with the random seed of each plant.
+ * <p>
+ * Combines {@link TreeFacet}, {@link BushFacet} and {@link FoliageFacet} into one facet. Placements are stored in
+ * primitive arrays grouped by column, instead of a map entry per position.
+ */
+public class FloraPlacementFacet extends BaseFacet3D {
+    public static final byte TREE = 1;
+    public static final byte BUSH = 2;
+    public static final byte FOLIAGE = 3;
+
+    private final int minX;
+    private final int minZ;
+    private final int sizeX;
+    private final int sizeZ;
+
+    // Placements of column i are stored from columnStarts[i] to columnStarts[i + 1]
+    private int[] columnStarts;
+    private int[] heights = new int[0];
+    private byte[] types = new byte[0];
+    private float[] seeds = new float[0];
+
+    public FloraPlacementFacet(BlockRegionc targetRegion, Border3D border) {
+        super(targetRegion, border);
+        BlockRegionc worldRegion = getWorldRegion();
+        minX = worldRegion.minX();
+        minZ = worldRegion.minZ();
+        sizeX = worldRegion.getSizeX();
+        sizeZ = worldRegion.getSizeZ();
+        columnStarts = new int[sizeX * sizeZ + 1];
+    }
+
+    public int getPlacementCount() {
+        return heights.length;
+    }
+
+    /**
+     * Visits all the placements of the type, column by column, with x in the outer and z in the inner loop like
+     * {@link DenseFloraFacet#forEach(DenseFloraFacet.CandidateVisitor)}.
+     */
+    public void forEachPlacement(byte type, PlacementVisitor visitor) {
+        for (int column = 0, columnCount = sizeX * sizeZ; column < columnCount; column++) {
+            int x = minX + column / sizeZ;
+            int z = minZ + column % sizeZ;
+            for (int i = columnStarts[column], end = columnStarts[column + 1]; i < end; i++) {
+                if (types[i] == type) {
+                    visitor.visit(x, heights[i], z, seeds[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the placements of the facet, the placements can be given in any order.
+     */
+    void setPlacements(int count, int[] worldX, int[] worldY, int[] worldZ, byte[] placementTypes, float[] placementSeeds) {
+        int[] starts = new int[sizeX * sizeZ + 1];
+        int[] columns = new int[count];
+        for (int i = 0; i < count; i++) {
+            columns[i] = (worldX[i] - minX) * sizeZ + worldZ[i] - minZ;
+            starts[columns[i] + 1]++;
+        }
+        for (int column = 0; column < sizeX * sizeZ; column++) {
+            starts[column + 1] += starts[column];
+        }
+
+        int[] nextIndex = new int[sizeX * sizeZ];
+        System.arraycopy(starts, 0, nextIndex, 0, nextIndex.length);
+        int[] sortedHeights = new int[count];
+        byte[] sortedTypes = new byte[count];
+        float[] sortedSeeds = new float[count];
+        for (int i = 0; i < count; i++) {
+            int index = nextIndex[columns[i]]++;
+            sortedHeights[index] = worldY[i];
+            sortedTypes[index] = placementTypes[i];
+            sortedSeeds[index] = placementSeeds[i];
+        }
+
+        columnStarts = starts;
+        heights = sortedHeights;
+        types = sortedTypes;
+        seeds = sortedSeeds;
+    }
+
+    public interface PlacementVisitor {
+        void visit(int x, int y, int z, float seed);
+    }
+}
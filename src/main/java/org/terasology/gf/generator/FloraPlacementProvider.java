@@ -0,0 +1,111 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.terasology.engine.utilities.procedural.WhiteNoise;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.Facet;
+import org.terasology.engine.world.generation.FacetBorder;
+import org.terasology.engine.world.generation.FacetProvider;
+import org.terasology.engine.world.generation.GeneratingRegion;
+import org.terasology.engine.world.generation.Produces;
+import org.terasology.engine.world.generation.Requires;
+
+/**
+ * Classifies the flora positions as trees, bushes or foliage in a single pass, producing the same placements as
+ * {@link TreeProvider}, {@link BushProvider} and {@link FoliageProvider} together. Can be used instead of the three
+ * providers, together with {@link DenseFloraProvider}. {@link FloraFeatureGenerator} uses the
+ * {@link FloraPlacementFacet} when it is available.
+ */
+@Produces(FloraPlacementFacet.class)
+@Requires(@Facet(value = DenseFloraFacet.class, border = @FacetBorder(sides = 13, bottom = 35)))
+public class FloraPlacementProvider implements FacetProvider {
+    private float treeAmount;
+    private float bushAmount;
+    private float foliageAmount;
+    private WhiteNoise treeNoise;
+    private WhiteNoise bushNoise;
+    private WhiteNoise foliageNoise;
+
+    public FloraPlacementProvider(float treeAmount, float bushAmount, float foliageAmount) {
+        this.treeAmount = treeAmount;
+        this.bushAmount = bushAmount;
+        this.foliageAmount = foliageAmount;
+    }
+
+    @Override
+    public void setSeed(long seed) {
+        // Same noises as the separate providers use
+        treeNoise = new WhiteNoise(seed + 26873);
+        bushNoise = new WhiteNoise(seed + 28873);
+        foliageNoise = new WhiteNoise(seed + 25873);
+    }
+
+    @Override
+    public void process(GeneratingRegion region) {
+        // Trees reach into the region from the border, bushes and foliage are placed only within the region
+        Border3D border = region.getBorderForFacet(FloraPlacementFacet.class);
+        FloraPlacementFacet facet = new FloraPlacementFacet(region.getRegion(), border.extendBy(0, 35, 13));
+        DenseFloraFacet floraFacet = region.getRegionFacet(DenseFloraFacet.class);
+        BlockRegionc placementRegion = facet.getWorldRegion();
+        BlockRegionc smallPlantRegion = region.getRegion();
+
+        Placements placements = new Placements(floraFacet.getCandidateCount());
+        floraFacet.forEach((x, y, z, seed) -> {
+            if (placementRegion.contains(x, y, z)) {
+                byte type = classify(x, y, z, smallPlantRegion);
+                if (type != 0) {
+                    placements.add(x, y, z, type, seed);
+                }
+            }
+        });
+
+        facet.setPlacements(placements.count, placements.worldX, placements.worldY, placements.worldZ, placements.types, placements.seeds);
+        region.setRegionFacet(FloraPlacementFacet.class, facet);
+    }
+
+    /**
+     * @return type of the plant at the position, or 0 if nothing is placed there
+     */
+    private byte classify(int x, int y, int z, BlockRegionc smallPlantRegion) {
+        if (treeNoise.noise(x, y, z) / 256f < treeAmount) {
+            return FloraPlacementFacet.TREE;
+        }
+        if (smallPlantRegion.contains(x, y, z)) {
+            if (bushNoise.noise(x, y, z) / 256f < bushAmount) {
+                return FloraPlacementFacet.BUSH;
+            }
+            if (foliageNoise.noise(x, y, z) / 256f < foliageAmount) {
+                return FloraPlacementFacet.FOLIAGE;
+            }
+        }
+        return 0;
+    }
+
+    private static final class Placements {
+        private final int[] worldX;
+        private final int[] worldY;
+        private final int[] worldZ;
+        private final byte[] types;
+        private final float[] seeds;
+        private int count;
+
+        private Placements(int capacity) {
+            worldX = new int[capacity];
+            worldY = new int[capacity];
+            worldZ = new int[capacity];
+            types = new byte[capacity];
+            seeds = new float[capacity];
+        }
+
+        private void add(int x, int y, int z, byte type, float seed) {
+            worldX[count] = x;
+            worldY[count] = y;
+            worldZ[count] = z;
+            types[count] = type;
+            seeds[count] = seed;
+            count++;
+        }
+    }
+}
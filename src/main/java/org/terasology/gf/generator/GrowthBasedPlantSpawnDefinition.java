@@ -71,4 +71,11 @@ public abstract class GrowthBasedPlantSpawnDefinition implements PlantSpawnDefin
         PlantGrowthDefinition plantGrowthDefinition = plantRegistry.getPlantGrowthDefinition(plantId);
         plantGrowthDefinition.generatePlant(seed, chunk, x, y + 1, z, region);
     }
+
+    @Override
+    public void preparePlant(long seed, int x, int y, int z, Region region) {
+        PlantRegistry plantRegistry = CoreRegistry.get(PlantRegistry.class);
+        PlantGrowthDefinition plantGrowthDefinition = plantRegistry.getPlantGrowthDefinition(plantId);
+        plantGrowthDefinition.preparePlant(seed, x, y + 1, z, region);
+    }
 }
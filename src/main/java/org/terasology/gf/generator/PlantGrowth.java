@@ -0,0 +1,21 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+
+/**
+ * Growth of a plant computed off the main thread by {@link PlantGrowthDefinition#prepareUpdatePlant}, waiting to be
+ * applied to the world.
+ */
+public interface PlantGrowth {
+    /**
+     * Applies the growth to the world, if the plant has not changed since the growth was computed. Called on the main
+     * thread.
+     *
+     * @return how long to next update (if any), as {@link PlantGrowthDefinition#requestedUpdatePlant} does
+     */
+    Long apply(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, EntityRef plant);
+}
@@ -23,6 +23,8 @@ import org.terasology.engine.world.generation.Region;
 import org.terasology.engine.world.generator.plugin.WorldGeneratorPlugin;
 import org.terasology.gf.util.LocalParameters;
 
+import java.util.function.Supplier;
+
 /**
  * @author Marcin Sciesinski <marcins78@gmail.com>
  */
@@ -31,6 +33,13 @@ public interface PlantGrowthDefinition extends WorldGeneratorPlugin {
 
     void generatePlant(long seed, Chunk chunk, int x, int y, int z, Region chunkRegion);
 
+    /**
+     * Computes ahead what {@link #generatePlant(long, Chunk, int, int, int, Region)} needs for the plant, without
+     * modifying the chunk. May be called from any thread.
+     */
+    default void preparePlant(long seed, int x, int y, int z, Region chunkRegion) {
+    }
+
     /**
      * Returns how long to next update (if any). If null is returned, it's considered that the sapling was not initialized.
      *
@@ -62,6 +71,19 @@ public interface PlantGrowthDefinition extends WorldGeneratorPlugin {
      */
     Long requestedUpdatePlant(WorldProvider worldProvider, LocalParameters localParameters, BlockEntityRegistry blockEntityRegistry, EntityRef plant);
 
+    /**
+     * Starts a requested update of the plant to be computed on a worker thread, instead of calling
+     * {@link #requestedUpdatePlant(WorldProvider, LocalParameters, BlockEntityRegistry, EntityRef)}. Called on the main
+     * thread, the returned computation must not access the world or the entities.
+     *
+     * @return computation of the growth to apply on the main thread, or null if the plant has to be updated by
+     * requestedUpdatePlant
+     */
+    default Supplier<PlantGrowth> prepareUpdatePlant(WorldProvider worldProvider, LocalParameters localParameters,
+                                                     BlockEntityRegistry blockEntityRegistry, EntityRef plant) {
+        return null;
+    }
+
     /**
      * Called randomly on a plant. If true is returned - this plant will no longer receive requested updates.
      *
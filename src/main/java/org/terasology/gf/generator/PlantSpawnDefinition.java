@@ -36,4 +36,11 @@ public interface PlantSpawnDefinition extends WorldGeneratorPlugin {
     String getPlantId();
 
     void generatePlant(long seed, Chunk chunk, int x, int y, int z, Region chunkRegion);
+
+    /**
+     * Computes ahead what {@link #generatePlant(long, Chunk, int, int, int, Region)} needs for the plant, without
+     * modifying the chunk. May be called from any thread.
+     */
+    default void preparePlant(long seed, int x, int y, int z, Region chunkRegion) {
+    }
 }
@@ -0,0 +1,51 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.entitySystem.event.AbstractConsumableEvent;
+import org.terasology.engine.world.block.family.BlockFamily;
+
+import java.util.Map;
+
+/**
+ * Sent to the world entity once a felled tree is removed, with the number of removed blocks of every block family that
+ * drop as themselves. Blocks with drop rules of their own, handling the engine's {@code CreateBlockDropsEvent}, drop
+ * what their rules decide and are not counted.
+ * <p>
+ * By default the counted blocks are dropped as items, in stacks as large as the item allows. Handlers may change the
+ * counts, for example to drop nothing for the leaves, or consume the event to drop the items themselves.
+ */
+public class CreateTreeDropsEvent extends AbstractConsumableEvent {
+    private final String treeType;
+    private final Vector3ic position;
+    private final Map<BlockFamily, Integer> droppedBlocks;
+
+    public CreateTreeDropsEvent(String treeType, Vector3ic position, Map<BlockFamily, Integer> droppedBlocks) {
+        this.treeType = treeType;
+        this.position = new Vector3i(position);
+        this.droppedBlocks = droppedBlocks;
+    }
+
+    /**
+     * @return type of the plant the felled tree was
+     */
+    public String getTreeType() {
+        return treeType;
+    }
+
+    /**
+     * @return position the tree was cut at, where the items are dropped
+     */
+    public Vector3ic getPosition() {
+        return position;
+    }
+
+    /**
+     * @return modifiable number of items to drop per block family
+     */
+    public Map<BlockFamily, Integer> getDroppedBlocks() {
+        return droppedBlocks;
+    }
+}
@@ -0,0 +1,15 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree;
+
+import org.terasology.gestalt.entitysystem.component.Component;
+
+/**
+ * Marks the root entity of a tree being felled over several ticks. Until felling finishes, the tree does not grow, so
+ * nothing is written into the blocks still waiting for removal. The rest of the tree can still be cut meanwhile.
+ */
+public class FellingTreeComponent implements Component<FellingTreeComponent> {
+    @Override
+    public void copyFrom(FellingTreeComponent other) {
+    }
+}
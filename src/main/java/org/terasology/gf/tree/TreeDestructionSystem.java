@@ -3,21 +3,34 @@
 package org.terasology.gf.tree;
 
 import org.joml.Vector3f;
+import org.joml.Vector3i;
 import org.joml.Vector3ic;
 import org.terasology.engine.entitySystem.entity.EntityManager;
 import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.event.EventPriority;
+import org.terasology.engine.entitySystem.event.Priority;
 import org.terasology.engine.entitySystem.prefab.Prefab;
 import org.terasology.engine.entitySystem.prefab.PrefabManager;
 import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
 import org.terasology.engine.entitySystem.systems.RegisterMode;
 import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.entitySystem.systems.UpdateSubscriberSystem;
 import org.terasology.engine.logic.health.BeforeDestroyEvent;
 import org.terasology.engine.logic.health.DestroyEvent;
+import org.terasology.engine.logic.inventory.ItemComponent;
 import org.terasology.engine.logic.inventory.events.DropItemEvent;
 import org.terasology.engine.registry.In;
+import org.terasology.engine.registry.Share;
 import org.terasology.engine.world.BlockEntityRegistry;
 import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.entity.CreateBlockDropsEvent;
+import org.terasology.engine.world.block.family.BlockFamily;
+import org.terasology.engine.world.block.items.BlockItemFactory;
 import org.terasology.engine.world.block.entity.neighbourUpdate.LargeBlockUpdateFinished;
 import org.terasology.engine.world.block.entity.neighbourUpdate.LargeBlockUpdateStarting;
 import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
@@ -26,13 +39,27 @@ import org.terasology.gf.PlantRegistry;
 import org.terasology.gf.generator.ConnectedPlantGrowthDefinition;
 import org.terasology.gf.generator.PlantGrowthDefinition;
 import org.terasology.gf.tree.lsystem.LSystemTreeComponent;
-import org.terasology.module.inventory.components.InventoryComponent;
-import org.terasology.module.inventory.systems.InventoryManager;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @RegisterSystem(RegisterMode.AUTHORITY)
-public class TreeDestructionSystem extends BaseComponentSystem {
+@Share(TreeDestructionSystem.class)
+public class TreeDestructionSystem extends BaseComponentSystem implements UpdateSubscriberSystem {
+    // Square of the horizontal distance from the root of a tree, within which its blocks can be attributed to that tree when felling
+    private static final int TREE_REACH_SQUARE = 512;
+    // Trees with more blocks are felled over several ticks
+    private static final int FELLED_BLOCKS_PER_TICK = 256;
+
     @In
     private EntityManager entityManager;
     @In
@@ -42,11 +69,48 @@ public class TreeDestructionSystem extends BaseComponentSystem {
     @In
     private BlockEntityRegistry blockEntityRegistry;
     @In
-    private InventoryManager inventoryManager;
-    @In
     private PrefabManager prefabManager;
+    @In
+    private BlockManager blockManager;
+
+    private BlockItemFactory blockItemFactory;
 
     private boolean processingDestruction;
+    private final TreeRootIndex treeRootIndex = new TreeRootIndex();
+    private final Deque<FellingJob> fellingQueue = new ArrayDeque<>();
+    private final Set<Vector3ic> pendingRemovals = new HashSet<>();
+    // Drops of the blocks being removed, while a batch of blocks is removed
+    private Map<BlockFamily, Integer> gatheredDrops;
+
+    @Override
+    public void initialise() {
+        blockItemFactory = new BlockItemFactory(entityManager);
+    }
+
+    @Override
+    public void postBegin() {
+        treeRootIndex.clear();
+        for (EntityRef tree : entityManager.getEntitiesWith(LSystemTreeComponent.class, BlockComponent.class)) {
+            treeRootIndex.add(tree, tree.getComponent(BlockComponent.class).getPosition());
+        }
+        // Felling is finished before saving, a marker left over means the game was not saved properly
+        List<EntityRef> fellingTrees = new ArrayList<>();
+        entityManager.getEntitiesWith(FellingTreeComponent.class).forEach(fellingTrees::add);
+        for (EntityRef tree : fellingTrees) {
+            tree.removeComponent(FellingTreeComponent.class);
+        }
+    }
+
+    // Trees enter and leave the index as they are created, loaded with their chunk, unloaded or destroyed
+    @ReceiveEvent
+    public void onTreeActivated(OnActivatedComponent event, EntityRef tree, LSystemTreeComponent treeComponent, BlockComponent blockComponent) {
+        treeRootIndex.add(tree, blockComponent.getPosition());
+    }
+
+    @ReceiveEvent
+    public void onTreeDeactivated(BeforeDeactivateComponent event, EntityRef tree, LSystemTreeComponent treeComponent, BlockComponent blockComponent) {
+        treeRootIndex.remove(tree);
+    }
 
     // There is some bug in Engine, which makes it impossible to do that
     @ReceiveEvent
@@ -57,23 +121,18 @@ public class TreeDestructionSystem extends BaseComponentSystem {
             try {
                 Vector3ic position = component.getPosition();
 
-                for (EntityRef testedTree : entityManager.getEntitiesWith(LSystemTreeComponent.class)) {
-                    BlockComponent blockComponent = testedTree.getComponent(BlockComponent.class);
-                    if (blockComponent != null) {
-                        Vector3ic testedPosition = blockComponent.getPosition();
-
-                        double distance = Math.sqrt((testedPosition.x() - position.x()) * (testedPosition.x() - position.x())
-                                + (testedPosition.z() - position.z()) * (testedPosition.z() - position.z()));
-                        if (distance < Math.sqrt(512)) {
-                            String type = testedTree.getComponent(LivingPlantComponent.class).type;
-                            PlantGrowthDefinition plantGrowthDefinition = plantRegistry.getPlantGrowthDefinition(type);
-                            if (plantGrowthDefinition instanceof ConnectedPlantGrowthDefinition) {
-                                ConnectedPlantGrowthDefinition plantDef = (ConnectedPlantGrowthDefinition) plantGrowthDefinition;
-                                Collection<Vector3ic> blocksConnectedTo = plantDef.getBlocksConnectedTo(worldProvider, blockEntityRegistry, position, testedTree);
-                                if (blocksConnectedTo != null) {
-                                    destroyTheConnectedBlocksAndGatherItems(position, blocksConnectedTo);
-                                }
-                            }
+                // Destroying the connected blocks may unload trees from the index, so iterate a copy
+                for (EntityRef testedTree : treeRootIndex.getTreesNear(position, TREE_REACH_SQUARE)) {
+                    if (!testedTree.exists()) {
+                        continue;
+                    }
+                    String type = testedTree.getComponent(LivingPlantComponent.class).type;
+                    PlantGrowthDefinition plantGrowthDefinition = plantRegistry.getPlantGrowthDefinition(type);
+                    if (plantGrowthDefinition instanceof ConnectedPlantGrowthDefinition) {
+                        ConnectedPlantGrowthDefinition plantDef = (ConnectedPlantGrowthDefinition) plantGrowthDefinition;
+                        Collection<Vector3ic> blocksConnectedTo = plantDef.getBlocksConnectedTo(worldProvider, blockEntityRegistry, position, testedTree);
+                        if (blocksConnectedTo != null) {
+                            destroyTheConnectedBlocksAndGatherItems(testedTree, type, position, blocksConnectedTo);
                         }
                     }
                 }
@@ -83,32 +142,224 @@ public class TreeDestructionSystem extends BaseComponentSystem {
         }
     }
 
-    private void destroyTheConnectedBlocksAndGatherItems(Vector3ic position, Collection<Vector3ic> blocksConnectedTo) {
-        EntityRef worldEntity = worldProvider.getWorldEntity();
-        worldEntity.send(new LargeBlockUpdateStarting());
-        try {
-            EntityRef tempInventoryEntity = entityManager.create();
-            try {
-                InventoryComponent inventory = new InventoryComponent(20);
-                tempInventoryEntity.addComponent(inventory);
-                Prefab damagePrefab = prefabManager.getPrefab("GrowingFlora:TreeCutDamage");
+    /**
+     * Counts the default drop of a block removed by felling into the drops of the tree, instead of dropping an item for
+     * every block. Blocks with drop rules of their own are handled with a higher priority, consuming the event.
+     */
+    @Priority(EventPriority.PRIORITY_LOW)
+    @ReceiveEvent
+    public void onFelledBlockDrops(CreateBlockDropsEvent event, EntityRef blockEntity, BlockComponent blockComponent) {
+        if (gatheredDrops != null) {
+            BlockFamily family = blockComponent.getBlock().getBlockFamily();
+            if (family != null) {
+                gatheredDrops.merge(family, 1, Integer::sum);
+            }
+            event.consume();
+        }
+    }
+
+    /**
+     * @return whether the block is queued for removal by a tree being felled over several ticks
+     */
+    public boolean isPendingRemoval(Vector3ic block) {
+        return pendingRemovals.contains(block);
+    }
+
+    @Override
+    public void update(float delta) {
+        int budget = FELLED_BLOCKS_PER_TICK;
+        while (budget > 0 && !fellingQueue.isEmpty()) {
+            FellingJob job = fellingQueue.peek();
+            int count = Math.min(budget, job.blocks.size() - job.removedCount);
+            List<Vector3ic> batch = job.blocks.subList(job.removedCount, job.removedCount + count);
+            removeBlocks(batch, job.families.subList(job.removedCount, job.removedCount + count), job.droppedBlocks);
+            batch.forEach(pendingRemovals::remove);
+            job.removedCount += count;
+            budget -= count;
+            if (job.removedCount == job.blocks.size()) {
+                fellingQueue.poll();
+                finishJob(job);
+            }
+        }
+    }
+
+    @Override
+    public void preSave() {
+        // Queued removals are not persisted, finish them before the world is saved
+        finishFelling();
+    }
+
+    @Override
+    public void shutdown() {
+        treeRootIndex.clear();
+        fellingQueue.clear();
+        pendingRemovals.clear();
+    }
+
+    private void finishFelling() {
+        while (!fellingQueue.isEmpty()) {
+            FellingJob job = fellingQueue.poll();
+            removeBlocks(job.blocks.subList(job.removedCount, job.blocks.size()), job.families.subList(job.removedCount, job.blocks.size()),
+                    job.droppedBlocks);
+            finishJob(job);
+        }
+        pendingRemovals.clear();
+    }
+
+    private void finishJob(FellingJob job) {
+        boolean treeStillFelled = false;
+        for (FellingJob queuedJob : fellingQueue) {
+            treeStillFelled |= queuedJob.tree.equals(job.tree);
+        }
+        if (!treeStillFelled && job.tree.exists() && job.tree.hasComponent(FellingTreeComponent.class)) {
+            job.tree.removeComponent(FellingTreeComponent.class);
+        }
+        dropItems(job.treeType, job.position, job.droppedBlocks);
+    }
+
+    /**
+     * Removes the blocks and drops the items decided by {@link CreateTreeDropsEvent}, merged into stacks per block
+     * family. Trees with more blocks than the per tick budget are felled over several ticks, top down, their blocks
+     * being marked as pending removal meanwhile, so they are not felled twice or owned by the tree anymore, and the tree
+     * being marked with {@link FellingTreeComponent}, so it does not grow into them. The rest of the tree can still be
+     * cut meanwhile. The block family at every position is
+     * recorded when felling starts, blocks replaced in the world meanwhile are left in place.
+     */
+    private void destroyTheConnectedBlocksAndGatherItems(EntityRef tree, String treeType, Vector3ic position,
+                                                         Collection<Vector3ic> blocksConnectedTo) {
+        List<Vector3ic> blocks = new ArrayList<>(blocksConnectedTo.size());
+        for (Vector3ic block : blocksConnectedTo) {
+            if (!pendingRemovals.contains(block) && worldProvider.isBlockRelevant(block)) {
+                blocks.add(block);
+            }
+        }
+
+        if (blocks.size() <= FELLED_BLOCKS_PER_TICK && fellingQueue.isEmpty()) {
+            Map<BlockFamily, Integer> droppedBlocks = new LinkedHashMap<>();
+            removeBlocks(blocks, getBlockFamilies(blocks), droppedBlocks);
+            dropItems(treeType, position, droppedBlocks);
+        } else {
+            // The canopy collapses first
+            blocks.sort(Comparator.comparingInt(Vector3ic::y).reversed());
+            for (Vector3ic block : blocks) {
+                pendingRemovals.add(new Vector3i(block));
+            }
+            fellingQueue.add(new FellingJob(tree, treeType, position, blocks, getBlockFamilies(blocks)));
+            if (!tree.hasComponent(FellingTreeComponent.class)) {
+                tree.addComponent(new FellingTreeComponent());
+            }
+        }
+    }
+
+    private List<BlockFamily> getBlockFamilies(List<Vector3ic> blocks) {
+        List<BlockFamily> families = new ArrayList<>(blocks.size());
+        for (Vector3ic block : blocks) {
+            families.add(worldProvider.getBlock(block).getBlockFamily());
+        }
+        return families;
+    }
 
-                for (Vector3ic blockPosition : blocksConnectedTo) {
-                    blockEntityRegistry.getEntityAt(blockPosition).send(
-                            new DestroyEvent(tempInventoryEntity, EntityRef.NULL, damagePrefab));
+    /**
+     * Removes the blocks in a single block update, counting the items to drop per block family. Blocks with an entity
+     * of their own are destroyed through the entity, so their state is cleaned up. Blocks whose prefab may define drop
+     * rules get the engine's {@link CreateBlockDropsEvent}. Drops not handled by drop rules of the block are counted by
+     * {@link #onFelledBlockDrops}, other blocks are counted directly. Blocks no longer of the expected family are not
+     * part of the tree anymore and are skipped.
+     */
+    private void removeBlocks(List<Vector3ic> blocksToRemove, List<BlockFamily> expectedFamilies, Map<BlockFamily, Integer> droppedBlocks) {
+        Block air = blockManager.getBlock(BlockManager.AIR_ID);
+        Prefab damagePrefab = prefabManager.getPrefab("GrowingFlora:TreeCutDamage");
+        Map<Vector3ic, Block> removedBlocks = new HashMap<>();
+        List<EntityRef> blockEntities = new ArrayList<>();
+        gatheredDrops = droppedBlocks;
+        try {
+            for (int i = 0, size = blocksToRemove.size(); i < size; i++) {
+                Vector3ic blockPosition = blocksToRemove.get(i);
+                if (!worldProvider.isBlockRelevant(blockPosition)) {
+                    continue;
+                }
+                Block block = worldProvider.getBlock(blockPosition);
+                if (block == air || block.getBlockFamily() != expectedFamilies.get(i)) {
+                    continue;
+                }
+                EntityRef blockEntity = blockEntityRegistry.getExistingBlockEntityAt(blockPosition);
+                if (blockEntity.exists()) {
+                    blockEntities.add(blockEntity);
+                    continue;
                 }
+                if (block.getPrefab().isPresent()) {
+                    blockEntityRegistry.getBlockEntityAt(blockPosition).send(new CreateBlockDropsEvent(EntityRef.NULL, EntityRef.NULL, damagePrefab));
+                } else if (block.getBlockFamily() != null) {
+                    droppedBlocks.merge(block.getBlockFamily(), 1, Integer::sum);
+                }
+                removedBlocks.put(blockPosition, air);
+            }
 
-                for (int i = 0; i < 20; i++) {
-                    EntityRef item = inventoryManager.getItemInSlot(tempInventoryEntity, i);
-                    if (item.exists()) {
-                        item.send(new DropItemEvent(new Vector3f(position)));
+            EntityRef worldEntity = worldProvider.getWorldEntity();
+            worldEntity.send(new LargeBlockUpdateStarting());
+            try {
+                worldProvider.setBlocks(removedBlocks);
+                // Destroying the blocks of the tree must not start felling it again
+                boolean wasProcessingDestruction = processingDestruction;
+                processingDestruction = true;
+                try {
+                    for (EntityRef blockEntity : blockEntities) {
+                        blockEntity.send(new DestroyEvent(EntityRef.NULL, EntityRef.NULL, damagePrefab));
                     }
+                } finally {
+                    processingDestruction = wasProcessingDestruction;
                 }
             } finally {
-                tempInventoryEntity.destroy();
+                worldEntity.send(new LargeBlockUpdateFinished());
             }
         } finally {
-            worldEntity.send(new LargeBlockUpdateFinished());
+            gatheredDrops = null;
+        }
+    }
+
+    private void dropItems(String treeType, Vector3ic position, Map<BlockFamily, Integer> droppedBlocks) {
+        CreateTreeDropsEvent createDrops = new CreateTreeDropsEvent(treeType, position, droppedBlocks);
+        worldProvider.getWorldEntity().send(createDrops);
+        if (createDrops.isConsumed()) {
+            return;
+        }
+
+        Vector3f dropPosition = new Vector3f(position);
+        for (Map.Entry<BlockFamily, Integer> droppedBlock : droppedBlocks.entrySet()) {
+            int remaining = droppedBlock.getValue();
+            while (remaining > 0) {
+                EntityRef item = blockItemFactory.newInstance(droppedBlock.getKey(), 1);
+                if (!item.exists()) {
+                    break;
+                }
+                // Stacks as large as the item allows
+                ItemComponent itemComponent = item.getComponent(ItemComponent.class);
+                int stackSize = Math.min(remaining, Math.max(1, itemComponent.maxStackSize));
+                itemComponent.stackCount = (byte) stackSize;
+                item.saveComponent(itemComponent);
+                item.send(new DropItemEvent(dropPosition));
+                remaining -= stackSize;
+            }
+        }
+    }
+
+    private static final class FellingJob {
+        private final EntityRef tree;
+        private final String treeType;
+        private final Vector3ic position;
+        // Blocks in the order of removal
+        private final List<Vector3ic> blocks;
+        // Family of every block when felling started
+        private final List<BlockFamily> families;
+        private final Map<BlockFamily, Integer> droppedBlocks = new LinkedHashMap<>();
+        private int removedCount;
+
+        private FellingJob(EntityRef tree, String treeType, Vector3ic position, List<Vector3ic> blocks, List<BlockFamily> families) {
+            this.tree = tree;
+            this.treeType = treeType;
+            this.position = new Vector3i(position);
+            this.blocks = blocks;
+            this.families = families;
         }
     }
 }
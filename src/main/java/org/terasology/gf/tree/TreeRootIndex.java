@@ -0,0 +1,87 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Root positions of the loaded trees, grouped into cells of columns, so the trees near a position can be found without
+ * visiting all the trees of the world.
+ */
+final class TreeRootIndex {
+    private static final int CELL_BITS = 5;
+
+    private final Map<Long, Map<EntityRef, Vector3ic>> cells = new HashMap<>();
+    private final Map<EntityRef, Vector3ic> roots = new HashMap<>();
+
+    public int size() {
+        return roots.size();
+    }
+
+    public void add(EntityRef tree, Vector3ic root) {
+        remove(tree);
+        Vector3ic position = new Vector3i(root);
+        roots.put(tree, position);
+        cells.computeIfAbsent(getCellKey(position.x() >> CELL_BITS, position.z() >> CELL_BITS), key -> new LinkedHashMap<>())
+                .put(tree, position);
+    }
+
+    public void remove(EntityRef tree) {
+        Vector3ic position = roots.remove(tree);
+        if (position != null) {
+            long cellKey = getCellKey(position.x() >> CELL_BITS, position.z() >> CELL_BITS);
+            Map<EntityRef, Vector3ic> cell = cells.get(cellKey);
+            cell.remove(tree);
+            if (cell.isEmpty()) {
+                cells.remove(cellKey);
+            }
+        }
+    }
+
+    public void clear() {
+        cells.clear();
+        roots.clear();
+    }
+
+    /**
+     * @return trees with the root closer horizontally to the position than the square root of the distance square
+     */
+    public List<EntityRef> getTreesNear(Vector3ic position, int distanceSquare) {
+        int range = (int) Math.ceil(Math.sqrt(distanceSquare));
+        int minCellX = (position.x() - range) >> CELL_BITS;
+        int maxCellX = (position.x() + range) >> CELL_BITS;
+        int minCellZ = (position.z() - range) >> CELL_BITS;
+        int maxCellZ = (position.z() + range) >> CELL_BITS;
+
+        List<EntityRef> result = new ArrayList<>();
+        for (int cellX = minCellX; cellX <= maxCellX; cellX++) {
+            for (int cellZ = minCellZ; cellZ <= maxCellZ; cellZ++) {
+                Map<EntityRef, Vector3ic> cell = cells.get(getCellKey(cellX, cellZ));
+                if (cell == null) {
+                    continue;
+                }
+                for (Map.Entry<EntityRef, Vector3ic> tree : cell.entrySet()) {
+                    Vector3ic root = tree.getValue();
+                    long distanceX = root.x() - position.x();
+                    long distanceZ = root.z() - position.z();
+                    if (distanceX * distanceX + distanceZ * distanceZ < distanceSquare) {
+                        result.add(tree.getKey());
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static long getCellKey(int cellX, int cellZ) {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+}
@@ -14,6 +14,11 @@ public class AdvanceAxionElementGeneration implements AxionElementGeneration {
 
     @Override
     public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, String axionParameter) {
+        generate(callback, position, rotation, CompiledAxion.parseParameter(axionParameter));
+    }
+
+    @Override
+    public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, float axionParameter) {
         callback.advance(advance);
     }
 }
@@ -2,20 +2,15 @@
 // SPDX-License-Identifier: Apache-2.0
 package org.terasology.gf.tree.lsystem;
 
-import com.google.common.collect.Queues;
-import org.joml.Matrix4f;
-import org.joml.Quaternionf;
-import org.joml.RoundingMode;
-import org.joml.Vector3f;
-import org.joml.Vector3fc;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
 import org.joml.Vector3i;
 import org.joml.Vector3ic;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.terasology.engine.core.Time;
 import org.terasology.engine.entitySystem.entity.EntityRef;
-import org.terasology.engine.math.Side;
-import org.terasology.engine.math.SideBitFlag;
 import org.terasology.engine.registry.CoreRegistry;
 import org.terasology.engine.utilities.random.FastRandom;
 import org.terasology.engine.utilities.random.Random;
@@ -24,30 +19,33 @@ import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockComponent;
 import org.terasology.engine.world.block.BlockManager;
-import org.terasology.engine.world.block.BlockRegion;
-import org.terasology.engine.world.block.BlockUri;
+import org.terasology.engine.world.block.BlockRegionc;
 import org.terasology.engine.world.block.entity.neighbourUpdate.LargeBlockUpdateFinished;
 import org.terasology.engine.world.block.entity.neighbourUpdate.LargeBlockUpdateStarting;
 import org.terasology.engine.world.block.entity.placement.PlaceBlocks;
 import org.terasology.engine.world.chunks.Chunk;
 import org.terasology.engine.world.chunks.Chunks;
 import org.terasology.gf.LivingPlantComponent;
-import org.terasology.gestalt.naming.Name;
+import org.terasology.gf.generator.PlantGrowth;
+import org.terasology.gf.tree.FellingTreeComponent;
+import org.terasology.gf.tree.TreeDestructionSystem;
 import org.terasology.engine.utilities.random.PDist;
 
 import java.util.Collection;
-import java.util.Collections;
-import java.util.Deque;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 public class AdvancedLSystemTreeDefinition {
     private static final Logger logger = LoggerFactory.getLogger(AdvancedLSystemTreeDefinition.class);
     private static final long FAILED_GROWTH_INTERVAL = 10000;
+    private static final long DEFAULT_TREE_STRUCTURE_CACHE_SIZE = 500000;
+    private static final long DEFAULT_GENERATION_AXION_CACHE_SIZE = 1000000;
+    private static final long DEFAULT_GENERATED_TREE_CACHE_SIZE = 200000;
+    // Templates are generated high above the bottom of the world, so none of their blocks are cut off
+    private static final Vector3ic TEMPLATE_ROOT = new Vector3i(0, 1 << 16, 0);
 
     private Map<Character, AxionElementGeneration> blockMap;
     private Map<Character, AxionElementReplacement> axionElementReplacements;
@@ -55,7 +53,18 @@ public class AdvancedLSystemTreeDefinition {
     private PDist treeLongevity;
     private int growthInterval;
     private String treeType;
-    private String saplingAxion;
+    private CompiledAxion compiledSaplingAxion;
+
+    // Replaced by the setter, read by the growth workers and the world generation threads
+    private volatile Cache<TreeStructureKey, TreeStructure> treeStructureCache = createTreeStructureCache(DEFAULT_TREE_STRUCTURE_CACHE_SIZE);
+    private boolean deterministicGrowth;
+    private final Cache<GenerationKey, CompiledAxion> generationAxionCache = CacheBuilder.newBuilder()
+            .maximumWeight(DEFAULT_GENERATION_AXION_CACHE_SIZE)
+            .weigher((GenerationKey key, CompiledAxion axion) -> axion.size())
+            .build();
+    private TreeTemplateLibrary templateLibrary;
+    // Replaced by the setter, read by the world generation threads
+    private volatile Cache<GeneratedTreeKey, GeneratedTree> generatedTreeCache = createGeneratedTreeCache(DEFAULT_GENERATED_TREE_CACHE_SIZE);
 
     public AdvancedLSystemTreeDefinition(String treeType, String saplingAxion, Map<Character, AxionElementReplacement> axionElementReplacements,
                                          Map<Character, AxionElementGeneration> blockMap, float angle) {
@@ -66,7 +75,7 @@ public class AdvancedLSystemTreeDefinition {
     public AdvancedLSystemTreeDefinition(String treeType, String saplingAxion, PDist branchAngle, PDist treeLongevity, int growthInterval,
                                          Map<Character, AxionElementReplacement> axionElementReplacements, Map<Character, AxionElementGeneration> blockMap) {
         this.treeType = treeType;
-        this.saplingAxion = saplingAxion;
+        this.compiledSaplingAxion = CompiledAxion.parse(saplingAxion);
         this.branchAngle = branchAngle;
         this.treeLongevity = treeLongevity;
         this.growthInterval = growthInterval;
@@ -74,39 +83,163 @@ public class AdvancedLSystemTreeDefinition {
         this.blockMap = blockMap;
     }
 
-    public void generateTree(long seed, String saplingBlock, Chunk chunk, int x, int y, int z) {
-        Vector3i worldPos = new Vector3i(x, y, z);
-        LSystemTreeComponent treeComponent = createNewTreeComponent(seed, worldPos);
+    /**
+     * Sets the maximum number of tree blocks held by the cache of generated tree structures. Tree structures are weighed
+     * by the number of blocks they contain, so the limit is independent of the size of the trees of this type.
+     * Resets the cache and its statistics.
+     */
+    public void setTreeStructureCacheSize(long maxCachedBlocks) {
+        treeStructureCache = createTreeStructureCache(maxCachedBlocks);
+    }
 
-        // Block locations in world coordinates
-        Map<Vector3ic, TreeBlockDefinition> treeBlocks = generateTreeFromAxion(worldPos, treeComponent.axion, treeComponent.branchAngle, treeComponent.rotationAngle)
-                .gatherBlockDefinitions();
+    /**
+     * @return hit and miss statistics of the cache of generated tree structures
+     */
+    public CacheStats getTreeStructureCacheStats() {
+        return treeStructureCache.stats();
+    }
 
-        BlockManager blockManager = CoreRegistry.get(BlockManager.class);
+    /**
+     * Enables the deterministic growth of new trees. A deterministic tree stores only its seed and generation, its
+     * axion for any generation is reproduced by {@link #getAxionForGeneration(long, int)}. Trees that were created
+     * with their axion stored keep growing that way.
+     */
+    public void setDeterministicGrowth(boolean deterministicGrowth) {
+        this.deterministicGrowth = deterministicGrowth;
+    }
+
+    /**
+     * Reproduces the axion of a deterministic tree. Generation 0 is the sapling, every following generation is grown
+     * from the previous one with a random seeded by the tree seed and the generation.
+     */
+    public CompiledAxion getAxionForGeneration(long seed, int generation) {
+        CompiledAxion axion = generationAxionCache.getIfPresent(new GenerationKey(seed, generation));
+        if (axion != null) {
+            return axion;
+        }
+
+        // Continue from the latest generation still cached
+        axion = compiledSaplingAxion;
+        int cachedGeneration = 0;
+        for (int i = generation - 1; i > 0; i--) {
+            CompiledAxion cachedAxion = generationAxionCache.getIfPresent(new GenerationKey(seed, i));
+            if (cachedAxion != null) {
+                axion = cachedAxion;
+                cachedGeneration = i;
+                break;
+            }
+        }
+        for (int i = cachedGeneration + 1; i <= generation; i++) {
+            axion = generateNextAxion(createGenerationRandom(seed, i), axion);
+        }
+        generationAxionCache.put(new GenerationKey(seed, generation), axion);
+        return axion;
+    }
+
+    /**
+     * Makes the trees placed by world generation and grown from generated saplings use pre-grown templates, picking one
+     * of the variants of the generation by the location of the tree. Disabled by default, set to 0 to disable again.
+     * <p>
+     * Templates are kept for every generation the tree can be placed with, so memory used by the templates grows with
+     * the number of variants. Templates are built when first used, or in the background by {@link #prepareTemplates(Executor)}.
+     */
+    public void setTemplateVariants(int variantsPerGeneration) {
+        if (variantsPerGeneration > 0) {
+            templateLibrary = new TreeTemplateLibrary((int) treeLongevity.getMax() - 1, variantsPerGeneration, this::buildTemplate);
+        } else {
+            templateLibrary = null;
+        }
+    }
+
+    /**
+     * Builds the templates on the executor, if templates are enabled.
+     */
+    public void prepareTemplates(Executor executor) {
+        TreeTemplateLibrary library = templateLibrary;
+        if (library != null) {
+            library.prepare(executor);
+        }
+    }
 
-        for (Map.Entry<Vector3ic, TreeBlockDefinition> treeBlock : treeBlocks.entrySet()) {
-            Vector3ic blockLocation = treeBlock.getKey();
+    /**
+     * Sets the maximum number of tree blocks held by the cache of trees generated for world generation. Trees reach
+     * into neighbouring chunks, so a generated tree is reused by every chunk it overlaps. Resets the cache and its
+     * statistics.
+     */
+    public void setGeneratedTreeCacheSize(long maxCachedBlocks) {
+        generatedTreeCache = createGeneratedTreeCache(maxCachedBlocks);
+    }
+
+    /**
+     * @return hit and miss statistics of the cache of trees generated for world generation
+     */
+    public CacheStats getGeneratedTreeCacheStats() {
+        return generatedTreeCache.stats();
+    }
 
+    /**
+     * Generates the tree ahead of {@link #generateTree(long, String, Chunk, int, int, int)}, keeping it in the cache of
+     * generated trees. May be called from any thread.
+     */
+    public void prepareTree(long seed, int x, int y, int z) {
+        getGeneratedTree(seed, new Vector3i(x, y, z));
+    }
+
+    public void generateTree(long seed, String saplingBlock, Chunk chunk, int x, int y, int z) {
+        Vector3i worldPos = new Vector3i(x, y, z);
+        GeneratedTree generatedTree = getGeneratedTree(seed, worldPos);
+
+        BlockRegionc chunkRegion = chunk.getRegion();
+        int chunkMinX = chunkRegion.minX();
+        int chunkMinY = chunkRegion.minY();
+        int chunkMinZ = chunkRegion.minZ();
+        Block[] blocks = generatedTree.blocks;
+        generatedTree.treeStructure.forEachBlockIn(chunkRegion, (blockIndex, blockX, blockY, blockZ) -> {
             // Do not set the base block - it will have to be initialized from the sapling
-            if (!blockLocation.equals(worldPos)) {
-                TreeBlockDefinition blockDefinition = treeBlock.getValue();
-                Block block = getBlock(blockManager, blockDefinition, blockLocation, treeBlocks.keySet());
-                if (chunk.getRegion().contains(blockLocation)) {
-                    chunk.setBlock(Chunks.toRelative(blockLocation, new Vector3i()), block);
-                }
+            if (blockX != x || blockY != y || blockZ != z) {
+                chunk.setBlock(blockX - chunkMinX, blockY - chunkMinY, blockZ - chunkMinZ, blocks[blockIndex]);
             }
-        }
+        });
 
         if (chunk.getRegion().contains(worldPos)) {
-            Block sapling = blockManager.getBlock(saplingBlock);
+            Block sapling = CoreRegistry.get(BlockManager.class).getBlock(saplingBlock);
             chunk.setBlock(Chunks.toRelative(worldPos, new Vector3i()), sapling);
         }
     }
 
+    private GeneratedTree getGeneratedTree(long seed, Vector3ic worldPos) {
+        try {
+            return generatedTreeCache.get(new GeneratedTreeKey(seed, worldPos), () -> generateTree(seed, worldPos));
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Unable to generate tree", e.getCause());
+        }
+    }
+
+    private GeneratedTree generateTree(long seed, Vector3ic worldPos) {
+        TreeStructure treeStructure = null;
+        TreeTemplateLibrary.TreeTemplate template = selectTemplate(seed, worldPos);
+        if (template != null) {
+            treeStructure = template.placeAt(worldPos);
+        }
+        if (treeStructure == null) {
+            LSystemTreeComponent treeComponent = new LSystemTreeComponent();
+            CompiledAxion axion = growNewTree(seed, worldPos, treeComponent);
+            treeStructure = generateTreeFromAxion(worldPos, axion, treeComponent.branchAngle, treeComponent.rotationAngle);
+        }
+
+        BlockManager blockManager = CoreRegistry.get(BlockManager.class);
+        Block[] blocks = new Block[treeStructure.getBlockCount()];
+        for (int i = 0; i < blocks.length; i++) {
+            blocks[i] = treeStructure.getBlock(blockManager, i);
+        }
+        return new GeneratedTree(treeStructure, blocks);
+    }
+
     public Long setupTreeBaseBlock(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, EntityRef sapling) {
         Vector3ic location = sapling.getComponent(BlockComponent.class).getPosition();
 
-        LSystemTreeComponent treeComponent = createNewTreeComponent(worldProvider.getSeed().hashCode(), location);
+        LSystemTreeComponent treeComponent = new LSystemTreeComponent();
+        CompiledAxion axion = growNewTree(worldProvider.getSeed().hashCode(), location, treeComponent);
 
         FastRandom rand = new FastRandom();
 
@@ -115,47 +248,104 @@ public class AdvancedLSystemTreeDefinition {
         int growthWait = rand.nextInt(growthInterval);
         treeComponent.lastGrowthTime = time - growthWait;
 
-        Map<Vector3ic, TreeBlockDefinition> treeBlocks = generateTreeFromAxion(location, treeComponent.axion, treeComponent.branchAngle, treeComponent.rotationAngle)
-                .gatherBlockDefinitions();
+        TreeStructure treeStructure = getTreeStructure(location, axion, treeComponent.branchAngle, treeComponent.rotationAngle);
 
         BlockManager blockManager = CoreRegistry.get(BlockManager.class);
-        TreeBlockDefinition blockDefinition = treeBlocks.get(location);
-        Block baseBlock = getBlock(blockManager, blockDefinition, location, treeBlocks.keySet());
+        Block baseBlock = treeStructure.getBlock(blockManager, treeStructure.indexOf(location.x(), location.y(), location.z()));
 
         worldProvider.setBlock(location, baseBlock);
 
-        checkForDeathAndSetupComponents(blockEntityRegistry, rand, location, treeComponent);
+        checkForDeathAndSetupComponents(blockEntityRegistry, rand, location, treeComponent, treeStructure);
 
         return (long) growthWait;
     }
 
-    private LSystemTreeComponent createNewTreeComponent(long seed, Vector3ic location) {
-        Random random = new FastRandom(seed + 345245 * (97L * location.x() + 13L * location.y() + location.z()));
+    /**
+     * Fills the component with a tree grown from the sapling at the specified location.
+     *
+     * @return the compiled axion of the grown tree, the component contains its encoded form
+     */
+    private CompiledAxion growNewTree(long seed, Vector3ic location, LSystemTreeComponent lSystemTree) {
+        TreeTemplateLibrary.TreeTemplate template = selectTemplate(seed, location);
+        if (template != null) {
+            template.setupComponent(lSystemTree);
+            return template.getAxion();
+        }
+
+        Random random = createNewTreeRandom(seed, location);
 
         // New axion (grown)
         int generation = 1 + random.nextInt((int) treeLongevity.getMax() - 1);
-        String nextAxion = saplingAxion;
+        CompiledAxion nextAxion = growAxion(lSystemTree, random, generation);
+
+        lSystemTree.branchAngle = branchAngle.getValue(random);
+        lSystemTree.rotationAngle = (float) Math.PI * random.nextFloat();
+        lSystemTree.generation = generation;
+        return nextAxion;
+    }
+
+    /**
+     * Grows the axion of a new tree from the sapling, which is generation 0, by one rewrite per generation. A
+     * deterministic tree takes its seed from the random, other trees use the random for the rewrites and store the
+     * axion in the component.
+     */
+    CompiledAxion growAxion(LSystemTreeComponent lSystemTree, Random random, int generation) {
+        if (deterministicGrowth) {
+            setupDeterministicTree(lSystemTree, random.nextLong());
+            return getAxionForGeneration(lSystemTree.seed, generation);
+        }
+        CompiledAxion axion = compiledSaplingAxion;
         for (int i = 0; i < generation; i++) {
-            nextAxion = generateNextAxion(random, nextAxion);
+            axion = generateNextAxion(random, axion);
         }
+        AxionCodec.writeAxion(lSystemTree, axion);
+        return axion;
+    }
+
+    private static Random createNewTreeRandom(long seed, Vector3ic location) {
+        return new FastRandom(seed + 345245 * (97L * location.x() + 13L * location.y() + location.z()));
+    }
+
+    /**
+     * @return template for a new tree at the location, or <code>null</code> if templates are disabled
+     */
+    private TreeTemplateLibrary.TreeTemplate selectTemplate(long seed, Vector3ic location) {
+        TreeTemplateLibrary library = templateLibrary;
+        if (library == null) {
+            return null;
+        }
+        Random random = createNewTreeRandom(seed, location);
+        int generation = 1 + random.nextInt((int) treeLongevity.getMax() - 1);
+        return library.getTemplate(generation, random.nextInt(library.getVariantCount()));
+    }
+
+    private TreeTemplateLibrary.TreeTemplate buildTemplate(int generation, int variant) {
+        long templateSeed = 31L * (31L * treeType.hashCode() + generation) + variant;
+        Random random = createGenerationRandom(templateSeed, generation);
 
         LSystemTreeComponent lSystemTree = new LSystemTreeComponent();
-        lSystemTree.axion = nextAxion;
+        CompiledAxion axion = growAxion(lSystemTree, random, generation);
         lSystemTree.branchAngle = branchAngle.getValue(random);
         lSystemTree.rotationAngle = (float) Math.PI * random.nextFloat();
         lSystemTree.generation = generation;
-        return lSystemTree;
+
+        TreeStructure treeStructure = generateTreeFromAxion(TEMPLATE_ROOT, axion, lSystemTree.branchAngle, lSystemTree.rotationAngle);
+        return new TreeTemplateLibrary.TreeTemplate(lSystemTree, axion, treeStructure);
     }
 
     public Long setupPlantedSapling(EntityRef treeRef) {
         Random random = new FastRandom();
         long time = CoreRegistry.get(Time.class).getGameTimeInMs();
 
-        // New axion (grown)
-        int generation = 1;
+        // The sapling itself
+        int generation = 0;
 
         LSystemTreeComponent lSystemTree = new LSystemTreeComponent();
-        lSystemTree.axion = saplingAxion;
+        if (deterministicGrowth) {
+            setupDeterministicTree(lSystemTree, random.nextLong());
+        } else {
+            AxionCodec.writeAxion(lSystemTree, compiledSaplingAxion);
+        }
         lSystemTree.branchAngle = branchAngle.getValue(random);
         lSystemTree.rotationAngle = (float) Math.PI * random.nextFloat();
         lSystemTree.generation = generation;
@@ -167,45 +357,84 @@ public class AdvancedLSystemTreeDefinition {
     }
 
     public Long updateTree(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, EntityRef treeRef) {
-        LSystemTreeComponent lSystemTree = treeRef.getComponent(LSystemTreeComponent.class);
-        long time = CoreRegistry.get(Time.class).getGameTimeInMs();
-        if (lSystemTree.lastGrowthTime == 0) {
+        Supplier<PlantGrowth> treeUpdate = prepareTreeUpdate(treeRef);
+        if (treeUpdate == null) {
             // This tree was just planted
-            lSystemTree.lastGrowthTime = time;
+            LSystemTreeComponent lSystemTree = treeRef.getComponent(LSystemTreeComponent.class);
+            lSystemTree.lastGrowthTime = CoreRegistry.get(Time.class).getGameTimeInMs();
             treeRef.saveComponent(lSystemTree);
 
             return (long) growthInterval;
-        } else {
-            Vector3ic treeLocation = treeRef.getComponent(BlockComponent.class).getPosition();
-            TreeStructure oldTreeStructure = generateTreeFromAxion(treeLocation, lSystemTree.axion, lSystemTree.branchAngle, lSystemTree.rotationAngle);
-            if (isWholeTreeSpaceLoaded(worldProvider, oldTreeStructure)) {
-                FastRandom rand = new FastRandom();
-
-                String nextAxion = generateNextAxion(rand, lSystemTree.axion);
-                TreeStructure newTreeStructure = generateTreeFromAxion(treeLocation, nextAxion, lSystemTree.branchAngle, lSystemTree.rotationAngle);
-                if (isWholeTreeSpaceLoaded(worldProvider, newTreeStructure)) {
-                    lSystemTree.axion = nextAxion;
-                    lSystemTree.generation++;
-                    lSystemTree.lastGrowthTime = time;
-
-                    if (!updateTreeInGame(worldProvider, oldTreeStructure.gatherBlockDefinitions(), newTreeStructure.gatherBlockDefinitions())) {
-                        return FAILED_GROWTH_INTERVAL;
-                    }
+        }
+        return treeUpdate.get().apply(worldProvider, blockEntityRegistry, treeRef);
+    }
 
-                    return checkForDeathAndSetupComponents(blockEntityRegistry, rand, treeLocation, lSystemTree);
-                }
-            }
-            return (long) growthInterval;
+    /**
+     * Captures the current state of the tree, so its next generation can be computed by the returned supplier on any
+     * thread. The supplied growth is applied to the world by {@link PlantGrowth#apply}, on the main thread.
+     *
+     * @return computation of the next generation, or null if the tree was just planted and is not growing yet
+     */
+    public Supplier<PlantGrowth> prepareTreeUpdate(EntityRef treeRef) {
+        LSystemTreeComponent lSystemTree = treeRef.getComponent(LSystemTreeComponent.class);
+        if (lSystemTree.lastGrowthTime == 0) {
+            return null;
+        }
+        LSystemTreeComponent grownFrom = new LSystemTreeComponent();
+        grownFrom.copyFrom(lSystemTree);
+        Vector3ic treeLocation = new Vector3i(treeRef.getComponent(BlockComponent.class).getPosition());
+        TreeStructure indexedTreeStructure = getIndexedTreeStructure(treeRef, treeLocation);
+        return () -> computeTreeGrowth(grownFrom, treeLocation, indexedTreeStructure);
+    }
+
+    private TreeGrowth computeTreeGrowth(LSystemTreeComponent grownFrom, Vector3ic treeLocation, TreeStructure indexedTreeStructure) {
+        CompiledAxion currentAxion = getAxion(grownFrom);
+        TreeStructure oldTreeStructure = indexedTreeStructure;
+        if (oldTreeStructure == null) {
+            oldTreeStructure = getTreeStructure(treeLocation, currentAxion, grownFrom.branchAngle, grownFrom.rotationAngle);
         }
+
+        boolean deterministicTree = isDeterministicTree(grownFrom);
+        Random rand = deterministicTree ? createGenerationRandom(grownFrom.seed, grownFrom.generation + 1) : new FastRandom();
+        CompiledAxion nextAxion = generateNextAxion(rand, currentAxion);
+        TreeStructure newTreeStructure = getTreeStructure(treeLocation, nextAxion, grownFrom.branchAngle, grownFrom.rotationAngle);
+        return new TreeGrowth(grownFrom, treeLocation, oldTreeStructure, nextAxion, newTreeStructure,
+                newTreeStructure.getDeltaFrom(oldTreeStructure), rand);
     }
 
-    private Long checkForDeathAndSetupComponents(BlockEntityRegistry blockEntityRegistry, Random random, Vector3ic location, LSystemTreeComponent treeComponent) {
+    private static void setupDeterministicTree(LSystemTreeComponent lSystemTree, long seed) {
+        lSystemTree.seed = seed;
+        lSystemTree.axion = null;
+        lSystemTree.encodedAxion = null;
+    }
+
+    private static boolean isDeterministicTree(LSystemTreeComponent lSystemTree) {
+        return lSystemTree.encodedAxion == null && lSystemTree.axion == null;
+    }
+
+    private CompiledAxion getAxion(LSystemTreeComponent lSystemTree) {
+        if (isDeterministicTree(lSystemTree)) {
+            return getAxionForGeneration(lSystemTree.seed, lSystemTree.generation);
+        }
+        return AxionCodec.readAxion(lSystemTree);
+    }
+
+    private static Random createGenerationRandom(long seed, int generation) {
+        long mixed = seed + generation * 0x9E3779B97F4A7C15L;
+        mixed = (mixed ^ (mixed >>> 30)) * 0xBF58476D1CE4E5B9L;
+        mixed = (mixed ^ (mixed >>> 27)) * 0x94D049BB133111EBL;
+        return new FastRandom(mixed ^ (mixed >>> 31));
+    }
+
+    private Long checkForDeathAndSetupComponents(BlockEntityRegistry blockEntityRegistry, Random random, Vector3ic location,
+                                                 LSystemTreeComponent treeComponent, TreeStructure treeStructure) {
         EntityRef entity = blockEntityRegistry.getBlockEntityAt(location);
         if (entity.hasComponent(LSystemTreeComponent.class)) {
             entity.saveComponent(treeComponent);
         } else {
             entity.addComponent(treeComponent);
         }
+        indexTreeStructure(entity, treeStructure);
         if (!entity.hasComponent(LivingPlantComponent.class)) {
             LivingPlantComponent livingPlantComponent = new LivingPlantComponent();
             livingPlantComponent.type = treeType;
@@ -231,26 +460,7 @@ public class AdvancedLSystemTreeDefinition {
         return (deathChance < random);
     }
 
-    private Block getBlock(BlockManager blockManager, TreeBlockDefinition block, Vector3ic location, Collection<Vector3ic> treeBlocks) {
-        BlockUri blockFamilyUri = new BlockUri(block.getBlockUri());
-        if (block.isBranchBlock()) {
-            byte connections = 0;
-            for (Side connectSide : SideBitFlag.getSides((byte) 63)) {
-                Vector3i neighborLocation = new Vector3i(location);
-                neighborLocation.add(connectSide.direction());
-
-                if (treeBlocks.contains(neighborLocation)) {
-                    connections += SideBitFlag.getSide(connectSide);
-                }
-            }
-            return blockManager.getBlock(new BlockUri(blockFamilyUri, new Name(String.valueOf(connections))));
-        } else {
-            return blockManager.getBlock(blockFamilyUri);
-        }
-    }
-
-    private boolean updateTreeInGame(WorldProvider worldProvider,
-                                     Map<Vector3ic, TreeBlockDefinition> currentTree, Map<Vector3ic, TreeBlockDefinition> nextTree) {
+    private boolean updateTreeInGame(WorldProvider worldProvider, TreeStructure previousTree, TreeStructure nextTree, TreeDelta delta) {
         BlockManager blockManager = CoreRegistry.get(BlockManager.class);
         Block air = blockManager.getBlock(BlockManager.AIR_ID);
 
@@ -260,21 +470,24 @@ public class AdvancedLSystemTreeDefinition {
 
         EntityRef worldEntity = worldProvider.getWorldEntity();
 
-        for (Map.Entry<Vector3ic, TreeBlockDefinition> newTreeBlock : nextTree.entrySet()) {
-            Vector3ic location = newTreeBlock.getKey();
-            TreeBlockDefinition oldBlock = currentTree.remove(location);
-            TreeBlockDefinition newBlock = newTreeBlock.getValue();
-
-            Block resultBlock = getBlock(blockManager, newBlock, location, nextTree.keySet());
+        TreeBlockMap nextBlocks = nextTree.getBlocks();
+        TreeBlockMap changedBlocks = delta.getChangedBlocks();
+        for (int i = 0, size = changedBlocks.size(); i < size; i++) {
+            long position = changedBlocks.getPosition(i);
+            Vector3i location = delta.getWorldPosition(position, new Vector3i());
+            if (isTreeBlockInWorld(worldProvider, blockManager, previousTree, location)) {
+                blocksToReplaceExistingTreeBlocks.put(location, nextTree.getBlock(blockManager, nextBlocks.indexOf(position)));
+                replaceCount++;
+            }
+        }
 
-            if (oldBlock != null && !oldBlock.getBlockUri().equals(newBlock.getBlockUri())) {
-                blocksToReplaceExistingTreeBlocks.put(location, resultBlock);
+        TreeBlockMap addedBlocks = delta.getAddedBlocks();
+        for (int i = 0, size = addedBlocks.size(); i < size; i++) {
+            long position = addedBlocks.getPosition(i);
+            Vector3i location = delta.getWorldPosition(position, new Vector3i());
+            if (worldProvider.getBlock(location).isReplacementAllowed()) {
+                blocksToPlaceInNewPlaces.put(location, nextTree.getBlock(blockManager, nextBlocks.indexOf(position)));
                 replaceCount++;
-            } else if (oldBlock == null) {
-                if (worldProvider.getBlock(location).isReplacementAllowed()) {
-                    blocksToPlaceInNewPlaces.put(new Vector3i(location), resultBlock);
-                    replaceCount++;
-                }
             }
         }
 
@@ -284,10 +497,14 @@ public class AdvancedLSystemTreeDefinition {
             worldProvider.getWorldEntity().send(placeBlocks);
 
             if (!placeBlocks.isConsumed()) {
-                for (Vector3ic location : currentTree.keySet()) {
+                TreeBlockMap removedBlocks = delta.getRemovedBlocks();
+                for (int i = 0, size = removedBlocks.size(); i < size; i++) {
                     // Remove the old block of tree
-                    blocksToReplaceExistingTreeBlocks.put(location, air);
-                    replaceCount++;
+                    Vector3i location = delta.getWorldPosition(removedBlocks.getPosition(i), new Vector3i());
+                    if (isTreeBlockInWorld(worldProvider, blockManager, previousTree, location)) {
+                        blocksToReplaceExistingTreeBlocks.put(location, air);
+                        replaceCount++;
+                    }
                 }
 
                 for (Map.Entry<Vector3ic, Block> blockLocation : blocksToReplaceExistingTreeBlocks.entrySet()) {
@@ -304,134 +521,153 @@ public class AdvancedLSystemTreeDefinition {
         }
     }
 
-    private String generateNextAxion(Random rand, String currentAxion) {
-        StringBuilder result = new StringBuilder();
-        for (AxionElement axion : parseAxions(currentAxion)) {
-            final AxionElementReplacement axionElementReplacement = axionElementReplacements.get(axion.key);
+    /**
+     * Blocks of the tree chopped or replaced in the world since the tree was placed are left as they are.
+     */
+    private static boolean isTreeBlockInWorld(WorldProvider worldProvider, BlockManager blockManager, TreeStructure tree, Vector3ic location) {
+        TreeBlockDefinition definition = tree.getBlockDefinition(location.x(), location.y(), location.z());
+        return definition != null && worldProvider.getBlock(location).getBlockFamily() == definition.getBlockFamily(blockManager);
+    }
+
+    private CompiledAxion generateNextAxion(Random rand, CompiledAxion currentAxion) {
+        CompiledAxion.Builder result = new CompiledAxion.Builder(currentAxion.size() * 2);
+        for (int i = 0, size = currentAxion.size(); i < size; i++) {
+            char key = currentAxion.getToken(i);
+            final AxionElementReplacement axionElementReplacement = axionElementReplacements.get(key);
             if (axionElementReplacement != null) {
-                result.append(axionElementReplacement.getReplacement(rand, axion.parameter, currentAxion));
+                result.append(axionElementReplacement.getCompiledReplacement(rand, currentAxion.getParameter(i), currentAxion));
             } else {
-                result.append(axion.key);
-                if (axion.parameter != null) {
-                    result.append("(").append(axion.parameter).append(")");
-                }
+                result.append(key, currentAxion.getParameter(i));
             }
         }
 
-        return result.toString();
+        return result.build();
+    }
+
+    private static Cache<TreeStructureKey, TreeStructure> createTreeStructureCache(long maxCachedBlocks) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxCachedBlocks)
+                .weigher((TreeStructureKey key, TreeStructure treeStructure) -> treeStructure.getBlockCount())
+                .recordStats()
+                .build();
+    }
+
+    private static Cache<GeneratedTreeKey, GeneratedTree> createGeneratedTreeCache(long maxCachedBlocks) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxCachedBlocks)
+                .weigher((GeneratedTreeKey key, GeneratedTree generatedTree) -> generatedTree.blocks.length)
+                .recordStats()
+                .build();
     }
 
-    private TreeStructure generateTreeFromAxion(Vector3ic location, String currentAxion, float angle, float treeRotation) {
-        TreeStructure treeStructure = new TreeStructure();
+    /**
+     * Returns the structure of the tree, reusing the one generated previously for the same inputs, if still cached.
+     * Returned structure is shared and must not be modified.
+     */
+    private TreeStructure getTreeStructure(Vector3ic location, CompiledAxion axion, float angle, float treeRotation) {
+        TreeStructureKey key = new TreeStructureKey(location, axion, angle, treeRotation);
+        TreeStructure treeStructure = treeStructureCache.getIfPresent(key);
+        if (treeStructure == null) {
+            treeStructure = generateTreeFromAxion(location, axion, angle, treeRotation);
+            treeStructureCache.put(key, treeStructure);
+        }
+        return treeStructure;
+    }
 
-        Deque<Vector3f> stackPosition = Queues.newArrayDeque();
-        Deque<Matrix4f> stackOrientation = Queues.newArrayDeque();
-        Deque<BranchLocation> stackBranch = Queues.newArrayDeque();
+    /**
+     * Returns the current structure of the tree entity from the ownership index, indexing it if it is not indexed yet.
+     */
+    private TreeStructure getTreeStructure(EntityRef treeRef, LSystemTreeComponent lSystemTree, Vector3ic location) {
+        TreeStructure treeStructure = getIndexedTreeStructure(treeRef, location);
+        if (treeStructure == null) {
+            treeStructure = getTreeStructure(location, getAxion(lSystemTree), lSystemTree.branchAngle, lSystemTree.rotationAngle);
+            indexTreeStructure(treeRef, treeStructure);
+        }
+        return treeStructure;
+    }
 
-        BranchLocation branchLocation = treeStructure.getRootBranch();
-        Vector3f position = new Vector3f(location);
-        //TODO: use Quaternionf directly, as in https://github.com/Terasology/CoreWorlds/commit/6484ebc671bf27511a7eebceeb67e19968d7f33c
-        Matrix4f rotation = new Matrix4f().translationRotateScale(new Vector3f(), new Quaternionf().setAngleAxis(treeRotation, 0, 1, 0), 1.0f);
+    /**
+     * @return structure of the tree rooted at the location from the ownership index, or null if it is not indexed
+     */
+    private static TreeStructure getIndexedTreeStructure(EntityRef treeRef, Vector3ic location) {
+        TreeOwnershipIndex ownershipIndex = CoreRegistry.get(TreeOwnershipIndex.class);
+        if (ownershipIndex != null) {
+            TreeStructure treeStructure = ownershipIndex.getTreeStructure(treeRef);
+            if (treeStructure != null && treeStructure.getRoot().equals(location)) {
+                return treeStructure;
+            }
+        }
+        return null;
+    }
 
-        Callback callback = new Callback(position, rotation);
-        callback.setBranchLocation(branchLocation);
+    private static void indexTreeStructure(EntityRef treeRef, TreeStructure treeStructure) {
+        TreeOwnershipIndex ownershipIndex = CoreRegistry.get(TreeOwnershipIndex.class);
+        if (ownershipIndex != null) {
+            ownershipIndex.setTreeStructure(treeRef, treeStructure);
+        }
+    }
 
-        int axionIndex = 0;
-        for (AxionElement axion : parseAxions(currentAxion)) {
-            Matrix4f tempRotation = new Matrix4f();
-            tempRotation.identity();
+    private TreeStructure generateTreeFromAxion(Vector3ic location, CompiledAxion currentAxion, float angle, float treeRotation) {
+        TreeStructure treeStructure = new TreeStructure(location);
+        TreeTurtle turtle = new TreeTurtle(treeStructure, treeRotation);
+        TurtleRotations rotations = new TurtleRotations(angle);
 
-            char c = axion.key;
-            float currentAngle = axion.parameter == null ? angle : (float) Math.toRadians(Integer.parseInt(axion.parameter));
+        int axionIndex = 0;
+        for (int i = 0, size = currentAxion.size(); i < size; i++) {
+            char c = currentAxion.getToken(i);
             switch (c) {
                 case '[':
-                    stackOrientation.push(new Matrix4f(rotation));
-                    stackPosition.push(new Vector3f(position));
-                    stackBranch.push(branchLocation);
-
-                    branchLocation = branchLocation.addBranch(axionIndex);
-                    callback.setBranchLocation(branchLocation);
+                    turtle.startBranch(axionIndex);
                     break;
                 case ']':
-                    rotation.set(stackOrientation.pop());
-                    position.set(stackPosition.pop());
-                    branchLocation = stackBranch.pop();
-                    callback.setBranchLocation(branchLocation);
+                    turtle.endBranch();
                     break;
                 case '&':
-                    tempRotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(currentAngle, 1, 0, 0));
-                    rotation.mul(tempRotation);
+                    rotations.rotate(turtle, TurtleRotations.PITCH_DOWN, currentAxion.getParameter(i));
                     break;
                 case '^':
-                    tempRotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(currentAngle, -1, 0, 0));
-                    rotation.mul(tempRotation);
+                    rotations.rotate(turtle, TurtleRotations.PITCH_UP, currentAxion.getParameter(i));
                     break;
                 case '+':
-                    tempRotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(currentAngle, 0, 1, 0));
-                    rotation.mul(tempRotation);
+                    rotations.rotate(turtle, TurtleRotations.TURN_LEFT, currentAxion.getParameter(i));
                     break;
                 case '-':
-                    tempRotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(currentAngle, 0, -1, 0));
-                    rotation.mul(tempRotation);
+                    rotations.rotate(turtle, TurtleRotations.TURN_RIGHT, currentAxion.getParameter(i));
                     break;
                 case '*':
-                    tempRotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(currentAngle, 0, 0, 1));
-                    rotation.mul(tempRotation);
+                    rotations.rotate(turtle, TurtleRotations.ROLL_LEFT, currentAxion.getParameter(i));
                     break;
                 case '/':
-                    tempRotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(currentAngle, 0, 0, -1));
-                    rotation.mul(tempRotation);
+                    rotations.rotate(turtle, TurtleRotations.ROLL_RIGHT, currentAxion.getParameter(i));
                     break;
                 default:
                     AxionElementGeneration axionElementGeneration = blockMap.get(c);
                     if (axionElementGeneration != null) {
-                        callback.setAxionIndex(axionIndex);
-                        axionElementGeneration.generate(callback, position, rotation, axion.parameter);
+                        turtle.setAxionIndex(axionIndex);
+                        axionElementGeneration.generate(turtle, turtle.getPosition(), turtle.getRotation(), currentAxion.getParameter(i));
                         axionIndex++;
                     }
             }
         }
+        treeStructure.complete();
         return treeStructure;
     }
 
-    private static List<AxionElement> parseAxions(String axionString) {
-        List<AxionElement> result = new LinkedList<>();
-        char[] chars = axionString.toCharArray();
-        int index = 0;
-        int size = chars.length;
-        while (index < size) {
-            char c = chars[index];
-            if (c == '(' || c == ')') {
-                throw new IllegalArgumentException("Invalid axion - parameter without key");
-            }
-            if (index + 1 < size && chars[index + 1] == '(') {
-                int closingBracket = axionString.indexOf(')', index + 1);
-                if (closingBracket < 0) {
-                    throw new IllegalArgumentException("Invalid axion - missing closing bracket");
-                }
-                String parameter = axionString.substring(index + 2, closingBracket);
-                index = closingBracket;
-                result.add(new AxionElement(c, parameter));
-            } else {
-                result.add(new AxionElement(c));
-            }
-            index++;
-        }
-
-        return result;
-    }
-
     public boolean isBlockOwnedByPlant(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, Vector3ic block, EntityRef treeRef) {
         LSystemTreeComponent lSystemTree = treeRef.getComponent(LSystemTreeComponent.class);
         if (lSystemTree == null) {
             return false;
         }
+        // Blocks queued for removal by felling are not part of the tree anymore
+        TreeDestructionSystem treeDestructionSystem = CoreRegistry.get(TreeDestructionSystem.class);
+        if (treeDestructionSystem != null && treeDestructionSystem.isPendingRemoval(block)) {
+            return false;
+        }
 
         Vector3ic location = treeRef.getComponent(BlockComponent.class).getPosition();
 
-        Map<Vector3ic, TreeBlockDefinition> treeBlockMap = generateTreeFromAxion(location, lSystemTree.axion, lSystemTree.branchAngle, lSystemTree.rotationAngle)
-                .gatherBlockDefinitions();
-        return treeBlockMap.containsKey(new Vector3i(block).sub(location));
+        TreeStructure treeStructure = getTreeStructure(treeRef, lSystemTree, location);
+        return treeStructure.containsBlock(block.x(), block.y(), block.z());
     }
 
     public Collection<Vector3ic> getBlocksConnectedTo(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, Vector3ic block, EntityRef treeRef) {
@@ -444,238 +680,197 @@ public class AdvancedLSystemTreeDefinition {
         Vector3ic treeRootLocation = treeRef.getComponent(BlockComponent.class).getPosition();
 
         // Does this tree have a block defined at that coordinate
-        TreeStructure treeStructure = generateTreeFromAxion(treeRootLocation, lSystemTree.axion, lSystemTree.branchAngle, lSystemTree.rotationAngle);
+        TreeStructure treeStructure = getTreeStructure(treeRef, lSystemTree, treeRootLocation);
 
-        Map<Vector3ic, TreeBlockDefinition> treeBlockMap = treeStructure.gatherBlockDefinitions();
-        TreeBlockDefinition expectedBlockDefinition = treeBlockMap.get(block);
+        TreeBlockDefinition expectedBlockDefinition = treeStructure.getBlockDefinition(block.x(), block.y(), block.z());
         if (expectedBlockDefinition == null) {
             return null;
         }
 
         // Is this block in world of the type it is supposed to be
+        BlockManager blockManager = CoreRegistry.get(BlockManager.class);
         Block blockInWorld = worldProvider.getBlock(block);
-        BlockUri familyUri = blockInWorld.getBlockFamily().getURI();
-        BlockUri expectedFamilyUri = new BlockUri(expectedBlockDefinition.getBlockUri()).getFamilyUri();
-        if (!familyUri.equals(expectedFamilyUri)) {
+        if (blockInWorld.getBlockFamily() != expectedBlockDefinition.getBlockFamily(blockManager)) {
             return null;
         }
 
-        return treeStructure.getBlocksConnectedTo(worldProvider, block);
+        return treeStructure.getBlocksConnectedTo(worldProvider, blockManager, block);
     }
 
-    private final class TreeStructure {
-        private BranchLocation rootBranch = new BranchLocation(0);
-        private Map<Vector3ic, TreeBlockDefinition> blockDefinitionsCache;
-
-        public BranchLocation getRootBranch() {
-            return rootBranch;
+    /**
+     * Next generation of a tree, computed from the captured state of the tree.
+     */
+    private final class TreeGrowth implements PlantGrowth {
+        private final LSystemTreeComponent grownFrom;
+        private final Vector3ic treeLocation;
+        private final TreeStructure oldTreeStructure;
+        private final CompiledAxion nextAxion;
+        private final TreeStructure newTreeStructure;
+        private final TreeDelta delta;
+        private final Random rand;
+
+        private TreeGrowth(LSystemTreeComponent grownFrom, Vector3ic treeLocation, TreeStructure oldTreeStructure, CompiledAxion nextAxion,
+                           TreeStructure newTreeStructure, TreeDelta delta, Random rand) {
+            this.grownFrom = grownFrom;
+            this.treeLocation = treeLocation;
+            this.oldTreeStructure = oldTreeStructure;
+            this.nextAxion = nextAxion;
+            this.newTreeStructure = newTreeStructure;
+            this.delta = delta;
+            this.rand = rand;
         }
 
-        public Map<Vector3ic, TreeBlockDefinition> gatherBlockDefinitions() {
-            if (blockDefinitionsCache != null) {
-                return blockDefinitionsCache;
+        @Override
+        public Long apply(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, EntityRef treeRef) {
+            LSystemTreeComponent lSystemTree = treeRef.getComponent(LSystemTreeComponent.class);
+            BlockComponent blockComponent = treeRef.getComponent(BlockComponent.class);
+            if (lSystemTree == null || blockComponent == null) {
+                return null;
             }
-            Map<Vector3ic, TreeBlockDefinition> result = new LinkedHashMap<>();
-            rootBranch.fillBlockDefinitions(result);
-            blockDefinitionsCache = result;
-            return result;
-        }
-
-        public Collection<Vector3ic> getBlocksConnectedTo(WorldProvider worldProvider, Vector3ic block) {
-            PositionOfBlock pob = rootBranch.getPositionOfBlock(block);
-            if (pob == null) {
-                return Collections.emptySet();
+            if (lSystemTree.generation != grownFrom.generation || lSystemTree.lastGrowthTime != grownFrom.lastGrowthTime
+                    || !blockComponent.getPosition().equals(treeLocation)) {
+                // The tree changed since the growth was computed
+                return (long) growthInterval;
             }
-            Map<Vector3ic, TreeBlockDefinition> blockDefinitionsBeforeTrim = gatherBlockDefinitions();
-
-            Map<Vector3ic, TreeBlockDefinition> connected = new LinkedHashMap<>(blockDefinitionsBeforeTrim);
-            Iterator<Map.Entry<Vector3ic, TreeBlockDefinition>> blockIterator = connected.entrySet().iterator();
-            while (blockIterator.hasNext()) {
-                Map.Entry<Vector3ic, TreeBlockDefinition> blockAtLocation = blockIterator.next();
-
-                Block blockInWorld = worldProvider.getBlock(blockAtLocation.getKey());
-                BlockUri familyUri = blockInWorld.getBlockFamily().getURI();
-                BlockUri expectedFamilyUri = new BlockUri(blockAtLocation.getValue().getBlockUri()).getFamilyUri();
-                if (!familyUri.equals(expectedFamilyUri)) {
-                    blockIterator.remove();
-                }
+            if (treeRef.hasComponent(FellingTreeComponent.class)) {
+                // Growing would write blocks into the tree still being removed
+                return (long) growthInterval;
             }
 
-            pob.branchLocation.trimEverythingAfter(pob.axionIndex);
-            blockDefinitionsCache = null;
-            Map<Vector3ic, TreeBlockDefinition> blockDefinitionsAfterTrim = gatherBlockDefinitions();
-
-            for (Vector3ic location : blockDefinitionsAfterTrim.keySet()) {
-                connected.remove(location);
+            if (getIndexedTreeStructure(treeRef, treeLocation) == null) {
+                indexTreeStructure(treeRef, oldTreeStructure);
             }
+            if (isWholeTreeSpaceLoaded(worldProvider, oldTreeStructure) && isWholeTreeSpaceLoaded(worldProvider, newTreeStructure)) {
+                if (isDeterministicTree(lSystemTree)) {
+                    generationAxionCache.put(new GenerationKey(lSystemTree.seed, lSystemTree.generation + 1), nextAxion);
+                } else {
+                    AxionCodec.writeAxion(lSystemTree, nextAxion);
+                }
+                lSystemTree.generation++;
+                lSystemTree.lastGrowthTime = CoreRegistry.get(Time.class).getGameTimeInMs();
 
-            return connected.keySet();
-        }
+                indexTreeStructure(treeRef, newTreeStructure);
 
-        public BlockRegion getTreeRegion() {
-            int minX = Integer.MAX_VALUE;
-            int minY = Integer.MAX_VALUE;
-            int minZ = Integer.MAX_VALUE;
-            int maxX = Integer.MIN_VALUE;
-            int maxY = Integer.MIN_VALUE;
-            int maxZ = Integer.MIN_VALUE;
+                if (!updateTreeInGame(worldProvider, oldTreeStructure, newTreeStructure, delta)) {
+                    return FAILED_GROWTH_INTERVAL;
+                }
 
-            for (Vector3ic block : gatherBlockDefinitions().keySet()) {
-                minX = Math.min(minX, block.x());
-                minY = Math.min(minY, block.y());
-                minZ = Math.min(minZ, block.z());
-                maxX = Math.max(maxX, block.x());
-                maxY = Math.max(maxY, block.y());
-                maxZ = Math.max(maxZ, block.z());
+                return checkForDeathAndSetupComponents(blockEntityRegistry, rand, treeLocation, lSystemTree, newTreeStructure);
             }
-            return new BlockRegion(minX, minY, minZ, maxX, maxY, maxZ);
+            return (long) growthInterval;
         }
     }
 
-    private final class BranchLocation {
-        private int startIndex;
-        private Map<Vector3ic, Integer> mainBlocks = new LinkedHashMap<>();
-        private Map<Integer, Map<Vector3ic, TreeBlockDefinition>> indexBlocks = new LinkedHashMap<>();
-
-        private List<BranchLocation> branches = new LinkedList<>();
-
-        private BranchLocation(int startIndex) {
-            this.startIndex = startIndex;
-        }
-
-        public BranchLocation addBranch(int branchStartIndex) {
-            BranchLocation result = new BranchLocation(branchStartIndex);
-            branches.add(result);
-            return result;
-        }
-
-        public void setMainBlock(int index, Vector3ic vector) {
-            mainBlocks.putIfAbsent(vector, index);
-        }
-
-        public void addTreeBlock(int index, Vector3ic vector, TreeBlockDefinition blockDefinition) {
-            Map<Vector3ic, TreeBlockDefinition> blockAtPositions = indexBlocks.computeIfAbsent(index, k -> new LinkedHashMap<>());
-            putDefinitionIfMoreImportant(vector, blockDefinition, blockAtPositions);
-        }
+    private static final class GeneratedTreeKey {
+        private final long seed;
+        private final int x;
+        private final int y;
+        private final int z;
 
-        public int getStartIndex() {
-            return startIndex;
+        private GeneratedTreeKey(long seed, Vector3ic location) {
+            this.seed = seed;
+            this.x = location.x();
+            this.y = location.y();
+            this.z = location.z();
         }
 
-        public void trimEverythingAfter(int index) {
-            indexBlocks.entrySet().removeIf(axiomElement -> axiomElement.getKey() > index);
-
-            branches.removeIf(branch -> branch.getStartIndex() > index);
-        }
-
-        private void putDefinitionIfMoreImportant(Vector3ic vector, TreeBlockDefinition blockDefinition, Map<Vector3ic, TreeBlockDefinition> blockAtPositions) {
-            TreeBlockDefinition oldDefinition = blockAtPositions.get(vector);
-            if (oldDefinition == null || oldDefinition.getTreePart().getPriority() < blockDefinition.getTreePart().getPriority()) {
-                blockAtPositions.put(vector, blockDefinition);
-            }
-        }
-
-        public void fillBlockDefinitions(Map<Vector3ic, TreeBlockDefinition> result) {
-            for (Map<Vector3ic, TreeBlockDefinition> blockDefinitions : indexBlocks.values()) {
-                for (Map.Entry<Vector3ic, TreeBlockDefinition> blockDefinition : blockDefinitions.entrySet()) {
-                    putDefinitionIfMoreImportant(blockDefinition.getKey(), blockDefinition.getValue(), result);
-                }
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
             }
-
-            for (BranchLocation branch : branches) {
-                branch.fillBlockDefinitions(result);
+            if (o == null || getClass() != o.getClass()) {
+                return false;
             }
+            GeneratedTreeKey other = (GeneratedTreeKey) o;
+            return seed == other.seed && x == other.x && y == other.y && z == other.z;
         }
 
-        public PositionOfBlock getPositionOfBlock(Vector3ic block) {
-            Integer result = mainBlocks.get(block);
-            if (result != null) {
-                return new PositionOfBlock(result, this);
-            }
-
-            for (BranchLocation branch : branches) {
-                PositionOfBlock pob = branch.getPositionOfBlock(block);
-                if (pob != null) {
-                    return pob;
-                }
-            }
-            return null;
+        @Override
+        public int hashCode() {
+            int result = Long.hashCode(seed);
+            result = 31 * result + x;
+            result = 31 * result + y;
+            result = 31 * result + z;
+            return result;
         }
     }
 
-    private final class PositionOfBlock {
-        private BranchLocation branchLocation;
-        private int axionIndex;
+    /**
+     * Tree generated for world generation, with the blocks to place resolved in the order of the tree structure.
+     */
+    private static final class GeneratedTree {
+        private final TreeStructure treeStructure;
+        private final Block[] blocks;
 
-        private PositionOfBlock(int axionIndex, BranchLocation branchLocation) {
-            this.axionIndex = axionIndex;
-            this.branchLocation = branchLocation;
+        private GeneratedTree(TreeStructure treeStructure, Block[] blocks) {
+            this.treeStructure = treeStructure;
+            this.blocks = blocks;
         }
     }
 
-    private final class Callback implements AxionElementGeneration.AxionElementGenerationCallback {
-        private BranchLocation branchLocation;
-        private int axionIndex;
-        private Vector3f position;
-        private Matrix4f rotation;
+    private static final class GenerationKey {
+        private final long seed;
+        private final int generation;
 
-        private Callback(Vector3f position, Matrix4f rotation) {
-            this.position = position;
-            this.rotation = rotation;
+        private GenerationKey(long seed, int generation) {
+            this.seed = seed;
+            this.generation = generation;
         }
 
-        public void setBranchLocation(BranchLocation branchLocation) {
-            this.branchLocation = branchLocation;
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            GenerationKey other = (GenerationKey) o;
+            return seed == other.seed && generation == other.generation;
         }
 
-        public void setAxionIndex(int axionIndex) {
-            this.axionIndex = axionIndex;
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(seed) + generation;
         }
+    }
 
-        private void setPosition(Vector3f position) {
-            this.position = position;
-        }
+    private static final class TreeStructureKey {
+        private final Vector3i location;
+        private final CompiledAxion axion;
+        private final float branchAngle;
+        private final float rotationAngle;
 
-        private void setRotation(Matrix4f rotation) {
-            this.rotation = rotation;
+        private TreeStructureKey(Vector3ic location, CompiledAxion axion, float branchAngle, float rotationAngle) {
+            this.location = new Vector3i(location);
+            this.axion = axion;
+            this.branchAngle = branchAngle;
+            this.rotationAngle = rotationAngle;
         }
 
         @Override
-        public void setMainBlock(Vector3fc blockPosition, TreeBlockDefinition blockDefinition) {
-            Vector3i integerPosition = new Vector3i(new Vector3f(blockPosition.x() + 0.5f, blockPosition.y() + 0.5f, blockPosition.z() + 0.5f), RoundingMode.FLOOR);
-            if (integerPosition.y >= 0) {
-                branchLocation.setMainBlock(axionIndex, integerPosition);
-                branchLocation.addTreeBlock(axionIndex, integerPosition, blockDefinition);
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
             }
-        }
-
-        @Override
-        public void setAdditionalBlock(Vector3fc blockPosition, TreeBlockDefinition blockDefinition) {
-            Vector3i integerPosition = new Vector3i(new Vector3f(blockPosition.x() + 0.5f, blockPosition.y() + 0.5f, blockPosition.z() + 0.5f), RoundingMode.FLOOR);
-            if (integerPosition.y >= 0) {
-                branchLocation.addTreeBlock(axionIndex, integerPosition, blockDefinition);
+            if (o == null || getClass() != o.getClass()) {
+                return false;
             }
+            TreeStructureKey other = (TreeStructureKey) o;
+            return Float.compare(branchAngle, other.branchAngle) == 0
+                    && Float.compare(rotationAngle, other.rotationAngle) == 0
+                    && location.equals(other.location)
+                    && axion.equals(other.axion);
         }
 
         @Override
-        public void advance(float distance) {
-            Vector3f dir = new Vector3f(0, distance, 0);
-            rotation.transformDirection(dir);
-            position.add(dir);
-        }
-    }
-
-    private static final class AxionElement {
-        private char key;
-        private String parameter;
-
-        private AxionElement(char key, String parameter) {
-            this.key = key;
-            this.parameter = parameter;
-        }
-
-        private AxionElement(char key) {
-            this.key = key;
+        public int hashCode() {
+            int result = location.hashCode();
+            result = 31 * result + axion.hashCode();
+            result = 31 * result + Float.floatToIntBits(branchAngle);
+            result = 31 * result + Float.floatToIntBits(rotationAngle);
+            return result;
         }
     }
 }
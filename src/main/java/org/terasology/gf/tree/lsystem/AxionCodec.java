@@ -0,0 +1,196 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compact binary form of an axion, stored in {@link LSystemTreeComponent#encodedAxion}.
+ * <p>
+ * The encoding starts with a version byte and a flags byte, followed by the element count and the elements. Every element
+ * is written as a varint of the token shifted above a two bit parameter kind, followed by the parameter: nothing, a
+ * varint for small whole numbers, or the four bytes of the float. Parameters are stored exactly, so a decoded axion
+ * always produces the same tree. Long axions are deflated, if it makes them smaller.
+ */
+public final class AxionCodec {
+    private static final int VERSION = 1;
+    private static final int FLAG_DEFLATED = 1;
+    private static final int HEADER_SIZE = 2;
+    private static final int DEFLATE_THRESHOLD = 512;
+
+    private static final int PARAMETER_NONE = 0;
+    private static final int PARAMETER_WHOLE = 1;
+    private static final int PARAMETER_FLOAT = 2;
+    private static final int MAX_WHOLE_PARAMETER = 1 << 20;
+
+    private AxionCodec() {
+    }
+
+    /**
+     * @return axion of the tree, decoded from the encoded form, or parsed from the string form of components stored
+     * before the encoding was introduced
+     */
+    public static CompiledAxion readAxion(LSystemTreeComponent component) {
+        if (component.encodedAxion != null) {
+            return decode(component.encodedAxion);
+        }
+        return CompiledAxion.parse(component.axion);
+    }
+
+    /**
+     * Stores the axion in the component in the encoded form, dropping the string form if present.
+     */
+    public static void writeAxion(LSystemTreeComponent component, CompiledAxion axion) {
+        component.encodedAxion = encode(axion);
+        component.axion = null;
+    }
+
+    public static byte[] encode(CompiledAxion axion) {
+        ByteArrayOutputStream elements = new ByteArrayOutputStream(axion.size() * 2 + 4);
+        writeVarInt(elements, axion.size());
+        for (int i = 0, size = axion.size(); i < size; i++) {
+            int token = axion.getToken(i);
+            if (!axion.hasParameter(i)) {
+                writeVarInt(elements, token << 2 | PARAMETER_NONE);
+            } else {
+                float parameter = axion.getParameter(i);
+                int wholeParameter = (int) parameter;
+                if (wholeParameter == parameter && wholeParameter >= 0 && wholeParameter < MAX_WHOLE_PARAMETER
+                        && Float.floatToRawIntBits(parameter) != Float.floatToRawIntBits(-0f)) {
+                    writeVarInt(elements, token << 2 | PARAMETER_WHOLE);
+                    writeVarInt(elements, wholeParameter);
+                } else {
+                    writeVarInt(elements, token << 2 | PARAMETER_FLOAT);
+                    int bits = Float.floatToRawIntBits(parameter);
+                    elements.write(bits >>> 24);
+                    elements.write(bits >>> 16);
+                    elements.write(bits >>> 8);
+                    elements.write(bits);
+                }
+            }
+        }
+
+        byte[] payload = elements.toByteArray();
+        int flags = 0;
+        if (payload.length > DEFLATE_THRESHOLD) {
+            byte[] deflated = deflate(payload);
+            if (deflated.length < payload.length) {
+                payload = deflated;
+                flags |= FLAG_DEFLATED;
+            }
+        }
+
+        byte[] result = new byte[HEADER_SIZE + payload.length];
+        result[0] = VERSION;
+        result[1] = (byte) flags;
+        System.arraycopy(payload, 0, result, HEADER_SIZE, payload.length);
+        return result;
+    }
+
+    public static CompiledAxion decode(byte[] encoded) {
+        if (encoded.length < HEADER_SIZE || encoded[0] != VERSION) {
+            throw new IllegalArgumentException("Unsupported encoded axion");
+        }
+        byte[] payload = Arrays.copyOfRange(encoded, HEADER_SIZE, encoded.length);
+        if ((encoded[1] & FLAG_DEFLATED) != 0) {
+            payload = inflate(payload);
+        }
+
+        int[] offset = new int[1];
+        int size = readVarInt(payload, offset);
+        CompiledAxion.Builder result = new CompiledAxion.Builder(size);
+        for (int i = 0; i < size; i++) {
+            int element = readVarInt(payload, offset);
+            char token = (char) (element >>> 2);
+            switch (element & 3) {
+                case PARAMETER_NONE:
+                    result.append(token);
+                    break;
+                case PARAMETER_WHOLE:
+                    result.append(token, readVarInt(payload, offset));
+                    break;
+                case PARAMETER_FLOAT:
+                    int index = offset[0];
+                    if (index + 4 > payload.length) {
+                        throw new IllegalArgumentException("Truncated encoded axion");
+                    }
+                    int bits = (payload[index] & 0xFF) << 24 | (payload[index + 1] & 0xFF) << 16 | (payload[index + 2] & 0xFF) << 8 | (payload[index + 3] & 0xFF);
+                    offset[0] = index + 4;
+                    result.append(token, Float.intBitsToFloat(bits));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Invalid parameter kind in encoded axion");
+            }
+        }
+        return result.build();
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt(byte[] input, int[] offset) {
+        int result = 0;
+        int shift = 0;
+        int index = offset[0];
+        while (true) {
+            if (index >= input.length || shift > 28) {
+                throw new IllegalArgumentException("Truncated encoded axion");
+            }
+            byte b = input[index++];
+            result |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        offset[0] = index;
+        return result;
+    }
+
+    private static byte[] deflate(byte[] data) {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION);
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length / 2);
+            byte[] buffer = new byte[1024];
+            while (!deflater.finished()) {
+                int count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] data) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(data);
+            ByteArrayOutputStream output = new ByteArrayOutputStream(data.length * 4);
+            byte[] buffer = new byte[1024];
+            while (!inflater.finished()) {
+                int count = inflater.inflate(buffer);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IllegalArgumentException("Truncated encoded axion");
+                }
+                output.write(buffer, 0, count);
+            }
+            return output.toByteArray();
+        } catch (DataFormatException e) {
+            throw new IllegalArgumentException("Invalid encoded axion", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
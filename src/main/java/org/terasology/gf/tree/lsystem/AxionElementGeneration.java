@@ -8,6 +8,16 @@ import org.joml.Vector3fc;
 public interface AxionElementGeneration {
     void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, String axionParameter);
 
+    /**
+     * Compiled variant of {@link #generate(AxionElementGenerationCallback, Vector3fc, Matrix4fc, String)}, called when
+     * interpreting the tree. Implementations should override it, to avoid formatting and parsing of the parameter.
+     *
+     * @param axionParameter parameter of the element, or {@link CompiledAxion#NO_PARAMETER}
+     */
+    default void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, float axionParameter) {
+        generate(callback, position, rotation, CompiledAxion.formatParameter(axionParameter));
+    }
+
     public interface AxionElementGenerationCallback {
         void setMainBlock(Vector3fc position, TreeBlockDefinition blockDefinition);
 
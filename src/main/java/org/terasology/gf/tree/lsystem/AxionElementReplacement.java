@@ -22,4 +22,14 @@ import org.terasology.engine.utilities.random.Random;
  */
 public interface AxionElementReplacement {
     String getReplacement(Random random, String parameter, String currentAxion);
+
+    /**
+     * Compiled variant of {@link #getReplacement(Random, String, String)}, used when rewriting the tree. Implementations
+     * should override it, if they are able to produce the replacement without going through the string form.
+     *
+     * @param parameter    parameter of the replaced element, or {@link CompiledAxion#NO_PARAMETER}
+     */
+    default CompiledAxion getCompiledReplacement(Random random, float parameter, CompiledAxion currentAxion) {
+        return CompiledAxion.parse(getReplacement(random, CompiledAxion.formatParameter(parameter), currentAxion.toString()));
+    }
 }
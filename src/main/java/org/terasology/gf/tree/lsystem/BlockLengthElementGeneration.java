@@ -16,8 +16,11 @@ public class BlockLengthElementGeneration implements AxionElementGeneration {
 
     @Override
     public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, String axionParameter) {
-        float length = Float.parseFloat(axionParameter);
+        generate(callback, position, rotation, CompiledAxion.parseParameter(axionParameter));
+    }
 
+    @Override
+    public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, float length) {
         for (float pos = advance; pos < length; pos += advance) {
             callback.setMainBlock(position, block);
             callback.advance(advance);
@@ -0,0 +1,197 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import java.util.Arrays;
+
+/**
+ * Array-backed form of an axion, used for rewriting and interpreting trees.
+ * <p>
+ * Every element of the axion is stored as a token and a parameter, elements without a parameter hold {@link #NO_PARAMETER}.
+ * The string form (i.e. {@code "N(3.5)[&A]"}) is only used to import and export the axion.
+ */
+public final class CompiledAxion {
+    public static final float NO_PARAMETER = Float.NaN;
+
+    private final char[] tokens;
+    private final float[] parameters;
+    private final int hashCode;
+
+    private String axionString;
+
+    private CompiledAxion(char[] tokens, float[] parameters) {
+        this.tokens = tokens;
+        this.parameters = parameters;
+        this.hashCode = 31 * Arrays.hashCode(tokens) + Arrays.hashCode(parameters);
+    }
+
+    public static CompiledAxion parse(String axionString) {
+        Builder result = new Builder(axionString.length());
+        int index = 0;
+        int size = axionString.length();
+        while (index < size) {
+            char c = axionString.charAt(index);
+            if (c == '(' || c == ')') {
+                throw new IllegalArgumentException("Invalid axion - parameter without key");
+            }
+            if (index + 1 < size && axionString.charAt(index + 1) == '(') {
+                int closingBracket = axionString.indexOf(')', index + 1);
+                if (closingBracket < 0) {
+                    throw new IllegalArgumentException("Invalid axion - missing closing bracket");
+                }
+                result.append(c, parseParameter(axionString.substring(index + 2, closingBracket)));
+                index = closingBracket;
+            } else {
+                result.append(c);
+            }
+            index++;
+        }
+
+        CompiledAxion compiledAxion = result.build();
+        compiledAxion.axionString = axionString;
+        return compiledAxion;
+    }
+
+    public static float parseParameter(String parameter) {
+        return parameter == null ? NO_PARAMETER : Float.parseFloat(parameter);
+    }
+
+    /**
+     * Formats the parameter the way it is written in the string form of an axion. Integral values are written without
+     * the fraction, so that angles stay readable as whole degrees.
+     */
+    public static String formatParameter(float parameter) {
+        if (Float.isNaN(parameter)) {
+            return null;
+        }
+        int integralValue = (int) parameter;
+        if (integralValue == parameter) {
+            return String.valueOf(integralValue);
+        }
+        return String.valueOf(parameter);
+    }
+
+    public int size() {
+        return tokens.length;
+    }
+
+    public char getToken(int index) {
+        return tokens[index];
+    }
+
+    public boolean hasParameter(int index) {
+        return !Float.isNaN(parameters[index]);
+    }
+
+    public float getParameter(int index) {
+        return parameters[index];
+    }
+
+    /**
+     * @return copy of this axion with the parameter of the last element replaced
+     */
+    public CompiledAxion withLastParameter(float parameter) {
+        if (tokens.length == 0) {
+            throw new IllegalStateException("Empty axion has no element to set the parameter on");
+        }
+        float[] resultParameters = Arrays.copyOf(parameters, parameters.length);
+        resultParameters[resultParameters.length - 1] = parameter;
+        return new CompiledAxion(tokens, resultParameters);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        CompiledAxion other = (CompiledAxion) o;
+        return hashCode == other.hashCode && Arrays.equals(tokens, other.tokens) && Arrays.equals(parameters, other.parameters);
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    /**
+     * @return the string form of the axion
+     */
+    @Override
+    public String toString() {
+        String result = axionString;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder(tokens.length * 2);
+            for (int i = 0; i < tokens.length; i++) {
+                sb.append(tokens[i]);
+                String parameter = formatParameter(parameters[i]);
+                if (parameter != null) {
+                    sb.append('(').append(parameter).append(')');
+                }
+            }
+            result = sb.toString();
+            axionString = result;
+        }
+        return result;
+    }
+
+    public static final class Builder {
+        private char[] tokens;
+        private float[] parameters;
+        private int size;
+
+        public Builder() {
+            this(16);
+        }
+
+        public Builder(int expectedSize) {
+            int capacity = Math.max(expectedSize, 1);
+            tokens = new char[capacity];
+            parameters = new float[capacity];
+        }
+
+        /**
+         * @return {@code this}, to allow for method chaining
+         */
+        public Builder append(char token) {
+            return append(token, NO_PARAMETER);
+        }
+
+        /**
+         * @return {@code this}, to allow for method chaining
+         */
+        public Builder append(char token, float parameter) {
+            ensureCapacity(size + 1);
+            tokens[size] = token;
+            parameters[size] = parameter;
+            size++;
+            return this;
+        }
+
+        /**
+         * @return {@code this}, to allow for method chaining
+         */
+        public Builder append(CompiledAxion axion) {
+            int length = axion.tokens.length;
+            ensureCapacity(size + length);
+            System.arraycopy(axion.tokens, 0, tokens, size, length);
+            System.arraycopy(axion.parameters, 0, parameters, size, length);
+            size += length;
+            return this;
+        }
+
+        public CompiledAxion build() {
+            return new CompiledAxion(Arrays.copyOf(tokens, size), Arrays.copyOf(parameters, size));
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > tokens.length) {
+                int newCapacity = Math.max(capacity, tokens.length * 2);
+                tokens = Arrays.copyOf(tokens, newCapacity);
+                parameters = Arrays.copyOf(parameters, newCapacity);
+            }
+        }
+    }
+}
@@ -16,6 +16,11 @@ public class DefaultAxionElementGeneration implements AxionElementGeneration {
 
     @Override
     public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, String axionParameter) {
+        generate(callback, position, rotation, CompiledAxion.parseParameter(axionParameter));
+    }
+
+    @Override
+    public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, float axionParameter) {
         callback.setMainBlock(position, block);
         callback.advance(advance);
     }
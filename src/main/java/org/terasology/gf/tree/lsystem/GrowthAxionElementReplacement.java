@@ -19,10 +19,12 @@ import org.terasology.engine.utilities.random.Random;
 
 public class GrowthAxionElementReplacement implements AxionElementReplacement {
     private String axion;
+    private CompiledAxion compiledAxion;
     private float growth;
 
     public GrowthAxionElementReplacement(String axion, float growth) {
         this.axion = axion;
+        this.compiledAxion = CompiledAxion.parse(axion);
         this.growth = growth;
     }
 
@@ -31,4 +33,9 @@ public class GrowthAxionElementReplacement implements AxionElementReplacement {
         float length = Float.parseFloat(parameter);
         return axion + "(" + (length * growth) + ")";
     }
+
+    @Override
+    public CompiledAxion getCompiledReplacement(Random random, float parameter, CompiledAxion currentAxion) {
+        return compiledAxion.withLastParameter(parameter * growth);
+    }
 }
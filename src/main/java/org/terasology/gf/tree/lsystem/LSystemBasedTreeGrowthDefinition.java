@@ -9,20 +9,35 @@ import org.terasology.engine.world.WorldProvider;
 import org.terasology.engine.world.chunks.Chunk;
 import org.terasology.engine.world.generation.Region;
 import org.terasology.gf.generator.ConnectedPlantGrowthDefinition;
+import org.terasology.gf.generator.PlantGrowth;
 import org.terasology.gf.util.LocalParameters;
 
 import java.util.Collection;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
 
 public abstract class LSystemBasedTreeGrowthDefinition implements ConnectedPlantGrowthDefinition {
     protected abstract AdvancedLSystemTreeDefinition getTreeDefinition();
 
     protected abstract String getGeneratedBlock();
 
+    /**
+     * Builds the templates of the tree on the executor, if the tree definition uses templates.
+     */
+    public void prepareTemplates(Executor executor) {
+        getTreeDefinition().prepareTemplates(executor);
+    }
+
     @Override
     public final void generatePlant(long seed, Chunk chunk, int x, int y, int z, Region chunkRegion) {
         getTreeDefinition().generateTree(seed, getGeneratedBlock(), chunk, x, y, z);
     }
 
+    @Override
+    public final void preparePlant(long seed, int x, int y, int z, Region chunkRegion) {
+        getTreeDefinition().prepareTree(seed, x, y, z);
+    }
+
     @Override
     public final Long initializeGeneratedPlant(WorldProvider worldProvider, BlockEntityRegistry blockEntityRegistry, EntityRef plant) {
         return getTreeDefinition().setupTreeBaseBlock(worldProvider, blockEntityRegistry, plant);
@@ -38,6 +53,12 @@ public abstract class LSystemBasedTreeGrowthDefinition implements ConnectedPlant
         return getTreeDefinition().updateTree(worldProvider, blockEntityRegistry, plant);
     }
 
+    @Override
+    public final Supplier<PlantGrowth> prepareUpdatePlant(WorldProvider worldProvider, LocalParameters localParameters,
+                                                          BlockEntityRegistry blockEntityRegistry, EntityRef plant) {
+        return getTreeDefinition().prepareTreeUpdate(plant);
+    }
+
     @Override
     public boolean randomUpdatePlant(WorldProvider worldProvider, LocalParameters localParameters, BlockEntityRegistry blockEntityRegistry, EntityRef plant) {
         // Do nothing on random update
@@ -11,7 +11,19 @@ import org.terasology.gestalt.entitysystem.component.Component;
  */
 @ForceBlockActive
 public class LSystemTreeComponent implements Component<LSystemTreeComponent> {
+    /**
+     * Axion in the string form, set only on trees stored before {@link #encodedAxion} was introduced.
+     * Use {@link AxionCodec} to access the axion of a tree.
+     */
     public String axion;
+    /**
+     * Axion in the form produced by {@link AxionCodec#encode(CompiledAxion)}.
+     */
+    public byte[] encodedAxion;
+    /**
+     * Seed of a tree grown deterministically, such a tree has neither of the axion fields set.
+     */
+    public long seed;
     public int generation;
     public long lastGrowthTime;
     public float branchAngle;
@@ -20,6 +32,8 @@ public class LSystemTreeComponent implements Component<LSystemTreeComponent> {
     @Override
     public void copyFrom(LSystemTreeComponent other) {
         this.axion = other.axion;
+        this.encodedAxion = other.encodedAxion != null ? other.encodedAxion.clone() : null;
+        this.seed = other.seed;
         this.generation = other.generation;
         this.lastGrowthTime = other.lastGrowthTime;
         this.branchAngle = other.branchAngle;
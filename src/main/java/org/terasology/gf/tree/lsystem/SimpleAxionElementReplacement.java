@@ -27,11 +27,13 @@ import java.util.List;
 public class SimpleAxionElementReplacement implements AxionElementReplacement {
     private float probabilitySum;
     private String defaultReplacement;
+    private CompiledAxion compiledDefaultReplacement;
     private List<Float> probabilities = new ArrayList<>();
     private List<AxionElementReplacement> replacements = new ArrayList<>();
 
     public SimpleAxionElementReplacement(String defaultReplacement) {
         this.defaultReplacement = defaultReplacement;
+        this.compiledDefaultReplacement = CompiledAxion.parse(defaultReplacement);
 
         probabilities.add(1f);
         replacements.add(null);
@@ -70,16 +72,34 @@ public class SimpleAxionElementReplacement implements AxionElementReplacement {
         return defaultReplacement;
     }
 
+    @Override
+    public CompiledAxion getCompiledReplacement(Random random, float parameter, CompiledAxion currentAxion) {
+        for (int i = 0, size = probabilities.size(); i < size - 1; i++) {
+            float randomValue = random.nextFloat();
+            if (probabilities.get(i) > randomValue && probabilities.get(i + 1) <= randomValue) {
+                return replacements.get(i + 1).getCompiledReplacement(random, parameter, currentAxion);
+            }
+        }
+        return compiledDefaultReplacement;
+    }
+
     private final class StaticReplacementGenerator implements AxionElementReplacement {
         private String result;
+        private CompiledAxion compiledResult;
 
         private StaticReplacementGenerator(String result) {
             this.result = result;
+            this.compiledResult = CompiledAxion.parse(result);
         }
 
         @Override
         public String getReplacement(Random random, String parameter, String currentAxion) {
             return result;
         }
+
+        @Override
+        public CompiledAxion getCompiledReplacement(Random random, float parameter, CompiledAxion currentAxion) {
+            return compiledResult;
+        }
     }
 }
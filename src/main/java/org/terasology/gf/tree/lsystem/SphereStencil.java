@@ -0,0 +1,126 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Matrix4fc;
+import org.joml.Vector3f;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Offsets of the blocks surrounding a point within a range, as used by the surround element generations.
+ * <p>
+ * Stencils are shared by all generations with the same range, inner range and maximum z. Offsets are rotated by the
+ * orientation of the turtle into a buffer reused by every call on the same thread, so the generated blocks are the same
+ * as when rotating every offset directly, without allocating per generated element.
+ */
+final class SphereStencil {
+    private static final Map<StencilKey, SphereStencil> STENCILS = new ConcurrentHashMap<>();
+    private static final ThreadLocal<Vector3f> WORK_VECTOR = ThreadLocal.withInitial(Vector3f::new);
+
+    // Offsets as x, y, z triples, in the order of the original cube iteration
+    private final float[] offsets;
+    private final boolean[] inner;
+    private final ThreadLocal<float[]> rotatedOffsets;
+
+    private SphereStencil(float innerRange, float range, int maxZ) {
+        float innerRangeSquare = innerRange * innerRange;
+        float rangeSquare = range * range;
+        int rangeInt = (int) range;
+        int maxOffsetZ = Math.min(rangeInt, maxZ);
+
+        float[] offsetsBuffer = new float[0];
+        boolean[] innerBuffer = new boolean[0];
+        int count = 0;
+        for (int x = -rangeInt; x <= rangeInt; x++) {
+            for (int y = -rangeInt; y <= rangeInt; y++) {
+                for (int z = -rangeInt; z <= maxOffsetZ; z++) {
+                    double distanceSquare = x * x + y * y + z * z;
+                    if (distanceSquare < rangeSquare || distanceSquare < innerRangeSquare) {
+                        if (count == innerBuffer.length) {
+                            int capacity = Math.max(16, count * 2);
+                            offsetsBuffer = Arrays.copyOf(offsetsBuffer, capacity * 3);
+                            innerBuffer = Arrays.copyOf(innerBuffer, capacity);
+                        }
+                        offsetsBuffer[count * 3] = x;
+                        offsetsBuffer[count * 3 + 1] = y;
+                        offsetsBuffer[count * 3 + 2] = z;
+                        innerBuffer[count] = distanceSquare < innerRangeSquare;
+                        count++;
+                    }
+                }
+            }
+        }
+        offsets = Arrays.copyOf(offsetsBuffer, count * 3);
+        inner = Arrays.copyOf(innerBuffer, count);
+        rotatedOffsets = ThreadLocal.withInitial(() -> new float[offsets.length]);
+    }
+
+    public static SphereStencil get(float innerRange, float range, int maxZ) {
+        return STENCILS.computeIfAbsent(new StencilKey(innerRange, range, maxZ), key -> new SphereStencil(innerRange, range, maxZ));
+    }
+
+    public int size() {
+        return inner.length;
+    }
+
+    /**
+     * @return <code>true</code>, if the offset is within the inner range
+     */
+    public boolean isInner(int index) {
+        return inner[index];
+    }
+
+    /**
+     * @return offsets transformed by the rotation, as x, y, z triples - the returned array is reused by the next call
+     * on the same thread and must not be modified
+     */
+    public float[] getRotatedOffsets(Matrix4fc rotation) {
+        float[] result = rotatedOffsets.get();
+        Vector3f workVector = WORK_VECTOR.get();
+        for (int i = 0; i < offsets.length; i += 3) {
+            workVector.set(offsets[i], offsets[i + 1], offsets[i + 2]);
+            rotation.transformDirection(workVector);
+            result[i] = workVector.x;
+            result[i + 1] = workVector.y;
+            result[i + 2] = workVector.z;
+        }
+        return result;
+    }
+
+    private static final class StencilKey {
+        private final float innerRange;
+        private final float range;
+        private final int maxZ;
+
+        private StencilKey(float innerRange, float range, int maxZ) {
+            this.innerRange = innerRange;
+            this.range = range;
+            this.maxZ = maxZ;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            StencilKey other = (StencilKey) o;
+            return Float.compare(innerRange, other.innerRange) == 0
+                    && Float.compare(range, other.range) == 0
+                    && maxZ == other.maxZ;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = Float.floatToIntBits(innerRange);
+            result = 31 * result + Float.floatToIntBits(range);
+            result = 31 * result + maxZ;
+            return result;
+        }
+    }
+}
@@ -7,13 +7,14 @@ import org.joml.Vector3f;
 import org.joml.Vector3fc;
 
 public class SurroundAxionElementGeneration implements AxionElementGeneration {
+    private static final ThreadLocal<Vector3f> WORK_VECTOR = ThreadLocal.withInitial(Vector3f::new);
+
     private final TreeBlockDefinition baseBlock;
     private final TreeBlockDefinition surroundBlock;
     private final float advance;
-    private final float innerRangeSquare;
+    private final float innerRange;
     private final float range;
-    private final float rangeSquare;
-    private int maxZ = Integer.MAX_VALUE;
+    private SphereStencil stencil;
 
     public SurroundAxionElementGeneration(TreeBlockDefinition baseBlock, TreeBlockDefinition surroundBlock, float advance, float range) {
         this(baseBlock, surroundBlock, advance, 0, range);
@@ -23,38 +24,29 @@ public class SurroundAxionElementGeneration implements AxionElementGeneration {
         this.baseBlock = baseBlock;
         this.surroundBlock = surroundBlock;
         this.advance = advance;
-        this.innerRangeSquare = innerRange * innerRange;
+        this.innerRange = innerRange;
         this.range = range;
-        this.rangeSquare = range * range;
+        this.stencil = SphereStencil.get(innerRange, range, Integer.MAX_VALUE);
     }
 
     public void setMaxZ(int maxZ) {
-        this.maxZ = maxZ;
+        this.stencil = SphereStencil.get(innerRange, range, maxZ);
     }
 
     @Override
     public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, String axionParameter) {
-        Vector3f workVector = new Vector3f();
+        generate(callback, position, rotation, CompiledAxion.parseParameter(axionParameter));
+    }
+
+    @Override
+    public void generate(AxionElementGenerationCallback callback, Vector3fc position, Matrix4fc rotation, float axionParameter) {
+        Vector3f workVector = WORK_VECTOR.get();
 
         callback.setMainBlock(position, baseBlock);
-        int rangeInt = (int) range;
-        for (int x = -rangeInt; x <= rangeInt; x++) {
-            for (int y = -rangeInt; y <= rangeInt; y++) {
-                for (int z = -rangeInt; z <= Math.min(rangeInt, maxZ); z++) {
-                    double distanceSquare = x * x + y * y + z * z;
-                    if (distanceSquare < innerRangeSquare) {
-                        workVector.set(x, y, z);
-                        rotation.transformDirection(workVector);
-                        workVector.add(position);
-                        callback.setAdditionalBlock(workVector, baseBlock);
-                    } else if (distanceSquare < rangeSquare) {
-                        workVector.set(x, y, z);
-                        rotation.transformDirection(workVector);
-                        workVector.add(position);
-                        callback.setAdditionalBlock(workVector, surroundBlock);
-                    }
-                }
-            }
+        float[] offsets = stencil.getRotatedOffsets(rotation);
+        for (int i = 0, size = stencil.size(); i < size; i++) {
+            workVector.set(offsets[i * 3], offsets[i * 3 + 1], offsets[i * 3 + 2]).add(position);
+            callback.setAdditionalBlock(workVector, stencil.isInner(i) ? baseBlock : surroundBlock);
         }
 
         callback.advance(advance);
@@ -16,16 +16,33 @@
 package org.terasology.gf.tree.lsystem;
 
 import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.world.block.Block;
 import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.BlockUri;
+import org.terasology.engine.world.block.family.BlockFamily;
+import org.terasology.gestalt.naming.Name;
 import org.terasology.gf.tree.PartOfTreeComponent;
 
 public class TreeBlockDefinition {
+    private static final int CONNECTION_VARIANTS = 64;
+
     private String blockUri;
     private PartOfTreeComponent.Part treePart;
+    private BlockUri familyUri;
+    // Uris of the block variants of a branch, indexed by the connection bit flags
+    private BlockUri[] connectionVariantUris;
+    private volatile ResolvedBlocks resolvedBlocks;
 
     public TreeBlockDefinition(String blockUri, PartOfTreeComponent.Part treePart) {
         this.blockUri = blockUri;
         this.treePart = treePart;
+        this.familyUri = new BlockUri(blockUri);
+        if (isBranchBlock()) {
+            connectionVariantUris = new BlockUri[CONNECTION_VARIANTS];
+            for (int connections = 0; connections < CONNECTION_VARIANTS; connections++) {
+                connectionVariantUris[connections] = new BlockUri(familyUri, new Name(String.valueOf(connections)));
+            }
+        }
 
         // Preload block
         CoreRegistry.get(BlockManager.class).getBlockFamily(blockUri);
@@ -42,4 +59,58 @@ public class TreeBlockDefinition {
     public PartOfTreeComponent.Part getTreePart() {
         return treePart;
     }
+
+    /**
+     * @param connections side bit flags of the neighbouring tree blocks, used only by branch blocks
+     * @return block to place for this definition
+     */
+    public Block getBlock(BlockManager blockManager, byte connections) {
+        Block[] blocks = resolve(blockManager).blocks;
+        return isBranchBlock() ? blocks[connections] : blocks[0];
+    }
+
+    /**
+     * @return family of the blocks of this definition, or <code>null</code> if it is not registered
+     */
+    public BlockFamily getBlockFamily(BlockManager blockManager) {
+        return resolve(blockManager).family;
+    }
+
+    /**
+     * Resolves the blocks of this definition once per block manager, so the blocks are resolved again when the block
+     * manager is replaced, i.e. when another game is loaded. Blocks of a family that is not registered (yet) are not
+     * kept.
+     */
+    private ResolvedBlocks resolve(BlockManager blockManager) {
+        ResolvedBlocks result = resolvedBlocks;
+        if (result == null || result.blockManager != blockManager) {
+            BlockFamily family = blockManager.getBlockFamily(familyUri);
+            Block[] blocks;
+            if (isBranchBlock()) {
+                blocks = new Block[CONNECTION_VARIANTS];
+                for (int connections = 0; connections < CONNECTION_VARIANTS; connections++) {
+                    blocks[connections] = blockManager.getBlock(connectionVariantUris[connections]);
+                }
+            } else {
+                blocks = new Block[]{blockManager.getBlock(familyUri)};
+            }
+            result = new ResolvedBlocks(blockManager, family, blocks);
+            if (family != null) {
+                resolvedBlocks = result;
+            }
+        }
+        return result;
+    }
+
+    private static final class ResolvedBlocks {
+        private final BlockManager blockManager;
+        private final BlockFamily family;
+        private final Block[] blocks;
+
+        private ResolvedBlocks(BlockManager blockManager, BlockFamily family, Block[] blocks) {
+            this.blockManager = blockManager;
+            this.family = family;
+            this.blocks = blocks;
+        }
+    }
 }
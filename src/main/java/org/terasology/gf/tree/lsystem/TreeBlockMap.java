@@ -0,0 +1,160 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import java.util.Arrays;
+
+/**
+ * Insertion-ordered map from a packed block position to an int value, backed by primitive arrays.
+ * <p>
+ * Positions are packed into a single long, 21 bits per axis, which is more than enough for coordinates relative to
+ * the root of a tree. Entries are stored densely in the order of insertion, so they can be iterated by index, and
+ * are looked up through an open-addressing hash table of entry indices. Entries cannot be removed.
+ */
+public final class TreeBlockMap {
+    public static final int NOT_FOUND = -1;
+
+    private static final int AXIS_BITS = 21;
+    private static final long AXIS_MASK = (1L << AXIS_BITS) - 1;
+    private static final int AXIS_SIGN_SHIFT = 64 - AXIS_BITS;
+
+    private long[] positions;
+    private int[] values;
+    private int size;
+
+    // Entry index + 1, 0 denotes an empty slot
+    private int[] table;
+    private int tableMask;
+
+    public TreeBlockMap() {
+        this(16);
+    }
+
+    public TreeBlockMap(int expectedSize) {
+        int capacity = Math.max(expectedSize, 4);
+        positions = new long[capacity];
+        values = new int[capacity];
+        int tableSize = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        table = new int[tableSize];
+        tableMask = tableSize - 1;
+    }
+
+    public static long pack(int x, int y, int z) {
+        return ((x & AXIS_MASK) << (2 * AXIS_BITS)) | ((y & AXIS_MASK) << AXIS_BITS) | (z & AXIS_MASK);
+    }
+
+    public static int unpackX(long position) {
+        return (int) ((position << (64 - 3 * AXIS_BITS)) >> AXIS_SIGN_SHIFT);
+    }
+
+    public static int unpackY(long position) {
+        return (int) ((position << (64 - 2 * AXIS_BITS)) >> AXIS_SIGN_SHIFT);
+    }
+
+    public static int unpackZ(long position) {
+        return (int) ((position << (64 - AXIS_BITS)) >> AXIS_SIGN_SHIFT);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public long getPosition(int index) {
+        return positions[index];
+    }
+
+    public int getValue(int index) {
+        return values[index];
+    }
+
+    public void setValue(int index, int value) {
+        values[index] = value;
+    }
+
+    /**
+     * @return index of the entry for the position, or {@link #NOT_FOUND}
+     */
+    public int indexOf(long position) {
+        int slot = hash(position) & tableMask;
+        while (true) {
+            int entry = table[slot];
+            if (entry == 0) {
+                return NOT_FOUND;
+            }
+            if (positions[entry - 1] == position) {
+                return entry - 1;
+            }
+            slot = (slot + 1) & tableMask;
+        }
+    }
+
+    public boolean contains(long position) {
+        return indexOf(position) != NOT_FOUND;
+    }
+
+    /**
+     * Sets the value for the position, adding a new entry if the position is not in the map yet.
+     *
+     * @return index of the entry
+     */
+    public int put(long position, int value) {
+        int index = indexOf(position);
+        if (index != NOT_FOUND) {
+            values[index] = value;
+            return index;
+        }
+        return add(position, value);
+    }
+
+    /**
+     * Adds an entry, if the position is not in the map yet.
+     *
+     * @return <code>true</code>, if the entry was added
+     */
+    public boolean putIfAbsent(long position, int value) {
+        if (indexOf(position) != NOT_FOUND) {
+            return false;
+        }
+        add(position, value);
+        return true;
+    }
+
+    private int add(long position, int value) {
+        if (size == positions.length) {
+            int newCapacity = positions.length * 2;
+            positions = Arrays.copyOf(positions, newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+        int index = size++;
+        positions[index] = position;
+        values[index] = value;
+
+        if (size * 2 > table.length) {
+            rehash(table.length * 2);
+        } else {
+            insertIntoTable(index);
+        }
+        return index;
+    }
+
+    private void rehash(int tableSize) {
+        table = new int[tableSize];
+        tableMask = tableSize - 1;
+        for (int i = 0; i < size; i++) {
+            insertIntoTable(i);
+        }
+    }
+
+    private void insertIntoTable(int index) {
+        int slot = hash(positions[index]) & tableMask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & tableMask;
+        }
+        table[slot] = index + 1;
+    }
+
+    private static int hash(long position) {
+        long mixed = position * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32));
+    }
+}
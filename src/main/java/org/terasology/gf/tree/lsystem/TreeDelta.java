@@ -0,0 +1,47 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+
+/**
+ * Blocks that differ between two consecutive structures of a tree. Positions are relative to the root of the tree.
+ */
+final class TreeDelta {
+    private final Vector3i root;
+    private final TreeBlockMap addedBlocks = new TreeBlockMap();
+    private final TreeBlockMap removedBlocks = new TreeBlockMap();
+    private final TreeBlockMap changedBlocks = new TreeBlockMap();
+
+    TreeDelta(Vector3ic root) {
+        this.root = new Vector3i(root);
+    }
+
+    public Vector3ic getRoot() {
+        return root;
+    }
+
+    public TreeBlockMap getAddedBlocks() {
+        return addedBlocks;
+    }
+
+    public TreeBlockMap getRemovedBlocks() {
+        return removedBlocks;
+    }
+
+    /**
+     * @return blocks present in both structures, which have to be replaced, because their definition or their
+     * connections changed
+     */
+    public TreeBlockMap getChangedBlocks() {
+        return changedBlocks;
+    }
+
+    /**
+     * @return world position of a block from the delta
+     */
+    public Vector3i getWorldPosition(long position, Vector3i dest) {
+        return dest.set(root.x + TreeBlockMap.unpackX(position), root.y + TreeBlockMap.unpackY(position), root.z + TreeBlockMap.unpackZ(position));
+    }
+}
@@ -0,0 +1,75 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.entitySystem.systems.BaseComponentSystem;
+import org.terasology.engine.entitySystem.systems.RegisterMode;
+import org.terasology.engine.entitySystem.systems.RegisterSystem;
+import org.terasology.engine.registry.Share;
+import org.terasology.gestalt.entitysystem.event.ReceiveEvent;
+
+/**
+ * Current structure of the loaded trees, mapping the positions of their blocks to the axion elements that placed them.
+ * <p>
+ * A tree is indexed when it is generated or grows, and when it is first queried after its chunk is loaded. It leaves
+ * the index when it is unloaded or stops being a tree. Checking whether a block belongs to an indexed tree is a lookup,
+ * rather than a rerun of the L-system.
+ * <p>
+ * Structures are weighed by the number of their blocks, like in the cache of tree structures, so the memory held by the
+ * index is bounded regardless of the size of the forest. A tree evicted from the index is indexed again the next time
+ * its structure is needed.
+ */
+@RegisterSystem(RegisterMode.AUTHORITY)
+@Share(TreeOwnershipIndex.class)
+public class TreeOwnershipIndex extends BaseComponentSystem {
+    private static final long DEFAULT_MAX_INDEXED_BLOCKS = 2000000;
+
+    private Cache<EntityRef, TreeStructure> treeStructures = createIndex(DEFAULT_MAX_INDEXED_BLOCKS);
+
+    @Override
+    public void shutdown() {
+        treeStructures.invalidateAll();
+    }
+
+    @ReceiveEvent
+    public void onTreeDeactivated(BeforeDeactivateComponent event, EntityRef tree, LSystemTreeComponent treeComponent) {
+        treeStructures.invalidate(tree);
+    }
+
+    /**
+     * Sets the maximum number of tree blocks held by the index. Clears the index.
+     */
+    public void setMaxIndexedBlocks(long maxIndexedBlocks) {
+        treeStructures = createIndex(maxIndexedBlocks);
+    }
+
+    public boolean isIndexed(EntityRef tree) {
+        return treeStructures.getIfPresent(tree) != null;
+    }
+
+    public long getIndexedTreeCount() {
+        return treeStructures.size();
+    }
+
+    /**
+     * @return structure of the tree, or <code>null</code> if the tree is not indexed
+     */
+    TreeStructure getTreeStructure(EntityRef tree) {
+        return treeStructures.getIfPresent(tree);
+    }
+
+    void setTreeStructure(EntityRef tree, TreeStructure treeStructure) {
+        treeStructures.put(tree, treeStructure);
+    }
+
+    private static Cache<EntityRef, TreeStructure> createIndex(long maxIndexedBlocks) {
+        return CacheBuilder.newBuilder()
+                .maximumWeight(maxIndexedBlocks)
+                .weigher((EntityRef tree, TreeStructure treeStructure) -> treeStructure.getBlockCount())
+                .build();
+    }
+}
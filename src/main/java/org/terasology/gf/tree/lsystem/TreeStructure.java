@@ -0,0 +1,550 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import com.google.common.base.Preconditions;
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.block.BlockRegionc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Blocks of a tree generated from an axion, grouped by the branches and axion elements that produced them.
+ * <p>
+ * Block positions are stored relative to the root of the tree, packed with {@link TreeBlockMap#pack(int, int, int)}.
+ * Block definitions are stored as indices into a palette of the definitions used by the tree. Once
+ * {@link #complete()} is called, the structure no longer changes and can be shared.
+ */
+final class TreeStructure {
+    private static final int PALETTE_BITS = 8;
+    private static final int PALETTE_MASK = (1 << PALETTE_BITS) - 1;
+
+    private static final Side[] SIDES = Side.values();
+    private static final int[] SIDE_OFFSETS = new int[SIDES.length * 3];
+    private static final byte[] SIDE_FLAGS = new byte[SIDES.length];
+
+    static {
+        for (int i = 0; i < SIDES.length; i++) {
+            Vector3ic direction = SIDES[i].direction();
+            SIDE_OFFSETS[i * 3] = direction.x();
+            SIDE_OFFSETS[i * 3 + 1] = direction.y();
+            SIDE_OFFSETS[i * 3 + 2] = direction.z();
+            SIDE_FLAGS[i] = SideBitFlag.getSide(SIDES[i]);
+        }
+    }
+
+    private final Vector3i root;
+    private final BranchLocation rootBranch;
+    private final List<TreeBlockDefinition> palette;
+
+    private TreeBlockMap blocks;
+    // Side bit flags of the neighbouring tree blocks of the branch blocks, indexed as the blocks
+    private byte[] connections;
+    private BlockRegion treeRegion;
+    // Branches in the order the blocks are filled, each branch owns the blocks it placed first
+    private BranchIndex branchIndex;
+
+    TreeStructure(Vector3ic root) {
+        this.root = new Vector3i(root);
+        this.rootBranch = new BranchLocation(0);
+        this.palette = new ArrayList<>();
+    }
+
+    private TreeStructure(Vector3ic root, TreeStructure source) {
+        this.root = new Vector3i(root);
+        this.rootBranch = source.rootBranch;
+        this.palette = source.palette;
+        this.blocks = source.blocks;
+        this.connections = source.connections;
+        this.branchIndex = source.branchIndex;
+        BlockRegion sourceRegion = source.treeRegion;
+        if (source.blocks.size() == 0) {
+            this.treeRegion = sourceRegion;
+            return;
+        }
+        int offsetX = root.x() - source.root.x;
+        int offsetY = root.y() - source.root.y;
+        int offsetZ = root.z() - source.root.z;
+        this.treeRegion = new BlockRegion(sourceRegion.minX() + offsetX, sourceRegion.minY() + offsetY, sourceRegion.minZ() + offsetZ,
+                sourceRegion.maxX() + offsetX, sourceRegion.maxY() + offsetY, sourceRegion.maxZ() + offsetZ);
+    }
+
+    /**
+     * @return the same tree with the root at another location, sharing the data of this completed structure
+     */
+    public TreeStructure translate(Vector3ic newRoot) {
+        return new TreeStructure(newRoot, this);
+    }
+
+    public Vector3ic getRoot() {
+        return root;
+    }
+
+    public BranchLocation getRootBranch() {
+        return rootBranch;
+    }
+
+    /**
+     * @return index of the definition in the palette of this tree, the definition is added if not used yet
+     */
+    public int getPaletteIndex(TreeBlockDefinition blockDefinition) {
+        for (int i = 0, size = palette.size(); i < size; i++) {
+            if (palette.get(i) == blockDefinition) {
+                return i;
+            }
+        }
+        if (palette.size() > PALETTE_MASK) {
+            throw new IllegalStateException("Too many different block definitions in one tree");
+        }
+        palette.add(blockDefinition);
+        return palette.size() - 1;
+    }
+
+    public TreeBlockDefinition getDefinition(int paletteIndex) {
+        return palette.get(paletteIndex);
+    }
+
+    /**
+     * Resolves the blocks of the tree from its branches. Has to be called once all the blocks are added.
+     */
+    public void complete() {
+        TreeBlockMap result = new TreeBlockMap(rootBranch.getTotalBlockCount());
+        BranchIndex index = new BranchIndex();
+        indexBranch(rootBranch, result, index);
+        index.computeBounds(result);
+        blocks = result;
+        branchIndex = index;
+
+        int minX = Integer.MAX_VALUE;
+        int minY = Integer.MAX_VALUE;
+        int minZ = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE;
+        int maxY = Integer.MIN_VALUE;
+        int maxZ = Integer.MIN_VALUE;
+
+        for (int i = 0, size = blocks.size(); i < size; i++) {
+            long position = blocks.getPosition(i);
+            int x = root.x + TreeBlockMap.unpackX(position);
+            int y = root.y + TreeBlockMap.unpackY(position);
+            int z = root.z + TreeBlockMap.unpackZ(position);
+            minX = Math.min(minX, x);
+            minY = Math.min(minY, y);
+            minZ = Math.min(minZ, z);
+            maxX = Math.max(maxX, x);
+            maxY = Math.max(maxY, y);
+            maxZ = Math.max(maxZ, z);
+        }
+        treeRegion = new BlockRegion(minX, minY, minZ, maxX, maxY, maxZ);
+        connections = computeConnections(minX - root.x, minY - root.y, minZ - root.z, maxX - root.x, maxY - root.y, maxZ - root.z);
+    }
+
+    /**
+     * Computes the connections of all branch blocks in one pass, using an occupancy bitfield of the bounding box of
+     * the tree (in coordinates relative to the root).
+     */
+    private byte[] computeConnections(int minX, int minY, int minZ, int maxX, int maxY, int maxZ) {
+        int size = blocks.size();
+        byte[] result = new byte[size];
+        if (size == 0) {
+            return result;
+        }
+        int sizeX = maxX - minX + 1;
+        int sizeY = maxY - minY + 1;
+        int sizeZ = maxZ - minZ + 1;
+        long[] occupied = new long[(int) (((long) sizeX * sizeY * sizeZ + 63) >>> 6)];
+        for (int i = 0; i < size; i++) {
+            long position = blocks.getPosition(i);
+            int bit = ((TreeBlockMap.unpackY(position) - minY) * sizeZ + TreeBlockMap.unpackZ(position) - minZ) * sizeX + TreeBlockMap.unpackX(position) - minX;
+            occupied[bit >>> 6] |= 1L << bit;
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (!palette.get(blocks.getValue(i)).isBranchBlock()) {
+                continue;
+            }
+            long position = blocks.getPosition(i);
+            int x = TreeBlockMap.unpackX(position) - minX;
+            int y = TreeBlockMap.unpackY(position) - minY;
+            int z = TreeBlockMap.unpackZ(position) - minZ;
+            byte blockConnections = 0;
+            for (int side = 0; side < SIDES.length; side++) {
+                int neighborX = x + SIDE_OFFSETS[side * 3];
+                int neighborY = y + SIDE_OFFSETS[side * 3 + 1];
+                int neighborZ = z + SIDE_OFFSETS[side * 3 + 2];
+                if (neighborX >= 0 && neighborX < sizeX && neighborY >= 0 && neighborY < sizeY && neighborZ >= 0 && neighborZ < sizeZ) {
+                    int bit = (neighborY * sizeZ + neighborZ) * sizeX + neighborX;
+                    if ((occupied[bit >>> 6] & (1L << bit)) != 0) {
+                        blockConnections |= SIDE_FLAGS[side];
+                    }
+                }
+            }
+            result[i] = blockConnections;
+        }
+        return result;
+    }
+
+    /**
+     * Fills the blocks as {@link #fillBlocks(BranchLocation, TreeBlockMap, BranchLocation, int)} does, recording the
+     * range of blocks placed first by every branch.
+     */
+    private void indexBranch(BranchLocation branch, TreeBlockMap result, BranchIndex index) {
+        int node = index.addBranch(result.size());
+        fillBranchBlocks(branch, result, false, 0);
+        index.ownBlocksEnd[node] = result.size();
+        for (BranchLocation subBranch : branch.branches) {
+            indexBranch(subBranch, result, index);
+        }
+        index.subtreeEnd[node] = index.branchCount;
+    }
+
+    /**
+     * Visits the blocks of the tree within the region. Whole sub-branches are skipped when none of their blocks are
+     * within the region, so visiting the part of a tree overlapping a chunk does not cost as much as visiting all of
+     * it.
+     */
+    public void forEachBlockIn(BlockRegionc region, BlockVisitor visitor) {
+        // Region relative to the root
+        int minX = region.minX() - root.x;
+        int minY = region.minY() - root.y;
+        int minZ = region.minZ() - root.z;
+        int maxX = region.maxX() - root.x;
+        int maxY = region.maxY() - root.y;
+        int maxZ = region.maxZ() - root.z;
+
+        BranchIndex index = branchIndex;
+        int[] bounds = index.bounds;
+        int node = 0;
+        while (node < index.branchCount) {
+            int boundsIndex = node * 6;
+            if (bounds[boundsIndex] > maxX || bounds[boundsIndex + 1] > maxY || bounds[boundsIndex + 2] > maxZ
+                    || bounds[boundsIndex + 3] < minX || bounds[boundsIndex + 4] < minY || bounds[boundsIndex + 5] < minZ) {
+                node = index.subtreeEnd[node];
+                continue;
+            }
+            for (int i = index.ownBlocksStart[node], end = index.ownBlocksEnd[node]; i < end; i++) {
+                long position = blocks.getPosition(i);
+                int x = TreeBlockMap.unpackX(position);
+                int y = TreeBlockMap.unpackY(position);
+                int z = TreeBlockMap.unpackZ(position);
+                if (x >= minX && x <= maxX && y >= minY && y <= maxY && z >= minZ && z <= maxZ) {
+                    visitor.visit(i, root.x + x, root.y + y, root.z + z);
+                }
+            }
+            node++;
+        }
+    }
+
+    /**
+     * @return positions of the blocks relative to the root, mapped to the palette index of their definition
+     */
+    public TreeBlockMap getBlocks() {
+        return blocks;
+    }
+
+    public int getBlockCount() {
+        return blocks.size();
+    }
+
+    public BlockRegion getTreeRegion() {
+        return treeRegion;
+    }
+
+    /**
+     * @return definition of the block at the world position, or <code>null</code> if the tree has no block there
+     */
+    public TreeBlockDefinition getBlockDefinition(int x, int y, int z) {
+        int index = blocks.indexOf(TreeBlockMap.pack(x - root.x, y - root.y, z - root.z));
+        if (index == TreeBlockMap.NOT_FOUND) {
+            return null;
+        }
+        return palette.get(blocks.getValue(index));
+    }
+
+    /**
+     * @return index of the block at the world position in {@link #getBlocks()}, or {@link TreeBlockMap#NOT_FOUND}
+     */
+    public int indexOf(int x, int y, int z) {
+        return blocks.indexOf(TreeBlockMap.pack(x - root.x, y - root.y, z - root.z));
+    }
+
+    /**
+     * @return block to place in the world for the block of the tree
+     */
+    public Block getBlock(BlockManager blockManager, int blockIndex) {
+        return palette.get(blocks.getValue(blockIndex)).getBlock(blockManager, connections[blockIndex]);
+    }
+
+    public boolean containsBlock(int x, int y, int z) {
+        return blocks.contains(TreeBlockMap.pack(x - root.x, y - root.y, z - root.z));
+    }
+
+    /**
+     * Computes the blocks that have to be updated in the world, when the previous structure of the tree grows into
+     * this one. Only the blocks that differ are resolved later on, so the cost of updating the world depends on the
+     * size of the change, rather than on the size of the tree.
+     */
+    public TreeDelta getDeltaFrom(TreeStructure previous) {
+        Preconditions.checkArgument(root.equals(previous.root), "Tree structures have different roots");
+        TreeBlockMap previousBlocks = previous.blocks;
+
+        TreeDelta delta = new TreeDelta(root);
+        for (int i = 0, size = blocks.size(); i < size; i++) {
+            long position = blocks.getPosition(i);
+            int previousIndex = previousBlocks.indexOf(position);
+            if (previousIndex == TreeBlockMap.NOT_FOUND) {
+                delta.getAddedBlocks().putIfAbsent(position, 0);
+            } else {
+                TreeBlockDefinition previousDefinition = previous.getDefinition(previousBlocks.getValue(previousIndex));
+                TreeBlockDefinition definition = getDefinition(blocks.getValue(i));
+                if (previousDefinition != definition && !previousDefinition.getBlockUri().equals(definition.getBlockUri())) {
+                    delta.getChangedBlocks().putIfAbsent(position, 0);
+                }
+            }
+        }
+        for (int i = 0, size = previousBlocks.size(); i < size; i++) {
+            long position = previousBlocks.getPosition(i);
+            if (!blocks.contains(position)) {
+                delta.getRemovedBlocks().putIfAbsent(position, 0);
+            }
+        }
+
+        // Branch blocks change their connections only if one of their neighbours appeared or disappeared
+        addChangedConnections(delta, delta.getAddedBlocks(), previousBlocks);
+        addChangedConnections(delta, delta.getRemovedBlocks(), previousBlocks);
+        return delta;
+    }
+
+    private void addChangedConnections(TreeDelta delta, TreeBlockMap changedLocations, TreeBlockMap previousBlocks) {
+        TreeBlockMap changedBlocks = delta.getChangedBlocks();
+        for (int i = 0, size = changedLocations.size(); i < size; i++) {
+            long position = changedLocations.getPosition(i);
+            int x = TreeBlockMap.unpackX(position);
+            int y = TreeBlockMap.unpackY(position);
+            int z = TreeBlockMap.unpackZ(position);
+            for (int side = 0; side < SIDES.length; side++) {
+                long neighborPosition = TreeBlockMap.pack(x + SIDE_OFFSETS[side * 3], y + SIDE_OFFSETS[side * 3 + 1], z + SIDE_OFFSETS[side * 3 + 2]);
+                int neighborIndex = blocks.indexOf(neighborPosition);
+                if (neighborIndex != TreeBlockMap.NOT_FOUND && getDefinition(blocks.getValue(neighborIndex)).isBranchBlock()
+                        && previousBlocks.contains(neighborPosition)) {
+                    changedBlocks.putIfAbsent(neighborPosition, 0);
+                }
+            }
+        }
+    }
+
+    public Collection<Vector3ic> getBlocksConnectedTo(WorldProvider worldProvider, BlockManager blockManager, Vector3ic block) {
+        PositionOfBlock pob = rootBranch.getPositionOfBlock(TreeBlockMap.pack(block.x() - root.x, block.y() - root.y, block.z() - root.z));
+        if (pob == null) {
+            return Collections.emptySet();
+        }
+
+        TreeBlockMap blocksAfterTrim = new TreeBlockMap(blocks.size());
+        fillBlocks(rootBranch, blocksAfterTrim, pob.branchLocation, pob.axionIndex);
+
+        List<Vector3ic> connected = new ArrayList<>();
+        Vector3i location = new Vector3i();
+        for (int i = 0, size = blocks.size(); i < size; i++) {
+            long position = blocks.getPosition(i);
+            if (blocksAfterTrim.contains(position)) {
+                continue;
+            }
+            location.set(root.x + TreeBlockMap.unpackX(position), root.y + TreeBlockMap.unpackY(position), root.z + TreeBlockMap.unpackZ(position));
+
+            Block blockInWorld = worldProvider.getBlock(location);
+            if (blockInWorld.getBlockFamily() == getDefinition(blocks.getValue(i)).getBlockFamily(blockManager)) {
+                connected.add(new Vector3i(location));
+            }
+        }
+        return connected;
+    }
+
+    /**
+     * Fills the blocks of the branch and all its sub-branches, more important tree parts replace the less important
+     * ones at the same position.
+     *
+     * @param trimmedBranch branch, which should be treated as if it ended at the trim index, or <code>null</code>
+     * @param trimIndex     last axion index of the trimmed branch to include
+     */
+    private void fillBlocks(BranchLocation branch, TreeBlockMap result, BranchLocation trimmedBranch, int trimIndex) {
+        boolean trimmed = branch == trimmedBranch;
+        fillBranchBlocks(branch, result, trimmed, trimIndex);
+
+        for (BranchLocation subBranch : branch.branches) {
+            if (!trimmed || subBranch.getStartIndex() <= trimIndex) {
+                fillBlocks(subBranch, result, trimmedBranch, trimIndex);
+            }
+        }
+    }
+
+    private void fillBranchBlocks(BranchLocation branch, TreeBlockMap result, boolean trimmed, int trimIndex) {
+        for (int i = 0; i < branch.blockCount; i++) {
+            int definitionAndIndex = branch.blockDefinitions[i];
+            // Axion indices of the blocks in a branch never decrease
+            if (trimmed && (definitionAndIndex >>> PALETTE_BITS) > trimIndex) {
+                break;
+            }
+            int paletteIndex = definitionAndIndex & PALETTE_MASK;
+            long position = branch.blockPositions[i];
+            int existing = result.indexOf(position);
+            if (existing == TreeBlockMap.NOT_FOUND) {
+                result.put(position, paletteIndex);
+            } else if (getDefinition(result.getValue(existing)).getTreePart().getPriority() < getDefinition(paletteIndex).getTreePart().getPriority()) {
+                result.setValue(existing, paletteIndex);
+            }
+        }
+    }
+
+    interface BlockVisitor {
+        /**
+         * @param blockIndex index of the block in {@link #getBlocks()}
+         */
+        void visit(int blockIndex, int x, int y, int z);
+    }
+
+    static final class BranchLocation {
+        private final int startIndex;
+        // Position of the main blocks, mapped to the axion index that placed them first
+        private final TreeBlockMap mainBlocks = new TreeBlockMap(4);
+
+        // All blocks added in this branch in the order of generation, the definition is stored as the axion index
+        // shifted above the palette index
+        private long[] blockPositions = new long[8];
+        private int[] blockDefinitions = new int[8];
+        private int blockCount;
+
+        private final List<BranchLocation> branches = new ArrayList<>();
+
+        private BranchLocation(int startIndex) {
+            this.startIndex = startIndex;
+        }
+
+        public BranchLocation addBranch(int branchStartIndex) {
+            BranchLocation result = new BranchLocation(branchStartIndex);
+            branches.add(result);
+            return result;
+        }
+
+        public void setMainBlock(int index, long position) {
+            mainBlocks.putIfAbsent(position, index);
+        }
+
+        public void addTreeBlock(int index, long position, int paletteIndex) {
+            if (blockCount == blockPositions.length) {
+                blockPositions = Arrays.copyOf(blockPositions, blockCount * 2);
+                blockDefinitions = Arrays.copyOf(blockDefinitions, blockCount * 2);
+            }
+            blockPositions[blockCount] = position;
+            blockDefinitions[blockCount] = (index << PALETTE_BITS) | paletteIndex;
+            blockCount++;
+        }
+
+        public int getStartIndex() {
+            return startIndex;
+        }
+
+        private int getTotalBlockCount() {
+            int result = blockCount;
+            for (BranchLocation branch : branches) {
+                result += branch.getTotalBlockCount();
+            }
+            return result;
+        }
+
+        private PositionOfBlock getPositionOfBlock(long position) {
+            int index = mainBlocks.indexOf(position);
+            if (index != TreeBlockMap.NOT_FOUND) {
+                return new PositionOfBlock(mainBlocks.getValue(index), this);
+            }
+
+            for (BranchLocation branch : branches) {
+                PositionOfBlock pob = branch.getPositionOfBlock(position);
+                if (pob != null) {
+                    return pob;
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Branches of a completed tree, in the order their blocks are filled. Every branch is listed with the range of
+     * blocks it placed first and the bounding box (relative to the root) of all the blocks placed first by it and its
+     * sub-branches. The sub-branches follow their branch, so a whole subtree is skipped by jumping to its end.
+     */
+    private static final class BranchIndex {
+        private int branchCount;
+        private int[] ownBlocksStart = new int[8];
+        private int[] ownBlocksEnd = new int[8];
+        // Index of the first branch after the subtree of the branch
+        private int[] subtreeEnd = new int[8];
+        // Minimum x, y, z and maximum x, y, z of every subtree
+        private int[] bounds;
+
+        private int addBranch(int firstBlock) {
+            if (branchCount == ownBlocksStart.length) {
+                ownBlocksStart = Arrays.copyOf(ownBlocksStart, branchCount * 2);
+                ownBlocksEnd = Arrays.copyOf(ownBlocksEnd, branchCount * 2);
+                subtreeEnd = Arrays.copyOf(subtreeEnd, branchCount * 2);
+            }
+            ownBlocksStart[branchCount] = firstBlock;
+            return branchCount++;
+        }
+
+        private void computeBounds(TreeBlockMap blocks) {
+            bounds = new int[branchCount * 6];
+            // Sub-branches are listed after their branch, so their bounds are known when the branch is reached
+            for (int node = branchCount - 1; node >= 0; node--) {
+                int boundsIndex = node * 6;
+                bounds[boundsIndex] = Integer.MAX_VALUE;
+                bounds[boundsIndex + 1] = Integer.MAX_VALUE;
+                bounds[boundsIndex + 2] = Integer.MAX_VALUE;
+                bounds[boundsIndex + 3] = Integer.MIN_VALUE;
+                bounds[boundsIndex + 4] = Integer.MIN_VALUE;
+                bounds[boundsIndex + 5] = Integer.MIN_VALUE;
+                for (int i = ownBlocksStart[node]; i < ownBlocksEnd[node]; i++) {
+                    long position = blocks.getPosition(i);
+                    include(boundsIndex, TreeBlockMap.unpackX(position), TreeBlockMap.unpackY(position), TreeBlockMap.unpackZ(position));
+                }
+                for (int child = node + 1; child < subtreeEnd[node]; child = subtreeEnd[child]) {
+                    int childIndex = child * 6;
+                    // Sub-branches, which placed no block first, have empty bounds
+                    if (bounds[childIndex] > bounds[childIndex + 3]) {
+                        continue;
+                    }
+                    include(boundsIndex, bounds[childIndex], bounds[childIndex + 1], bounds[childIndex + 2]);
+                    include(boundsIndex, bounds[childIndex + 3], bounds[childIndex + 4], bounds[childIndex + 5]);
+                }
+            }
+        }
+
+        private void include(int boundsIndex, int x, int y, int z) {
+            bounds[boundsIndex] = Math.min(bounds[boundsIndex], x);
+            bounds[boundsIndex + 1] = Math.min(bounds[boundsIndex + 1], y);
+            bounds[boundsIndex + 2] = Math.min(bounds[boundsIndex + 2], z);
+            bounds[boundsIndex + 3] = Math.max(bounds[boundsIndex + 3], x);
+            bounds[boundsIndex + 4] = Math.max(bounds[boundsIndex + 4], y);
+            bounds[boundsIndex + 5] = Math.max(bounds[boundsIndex + 5], z);
+        }
+    }
+
+    private static final class PositionOfBlock {
+        private final BranchLocation branchLocation;
+        private final int axionIndex;
+
+        private PositionOfBlock(int axionIndex, BranchLocation branchLocation) {
+            this.axionIndex = axionIndex;
+            this.branchLocation = branchLocation;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Vector3ic;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Pre-grown trees of one species, a fixed number of variants for every generation a tree can be placed with.
+ * <p>
+ * Each template is built once, either in the background by {@link #prepare(Executor)} or on the first request, by the
+ * same builder with the same inputs. The template returned for a generation and variant therefore never depends on
+ * timing, so world generation and sapling setup agree on the tree at a location.
+ */
+final class TreeTemplateLibrary {
+    private final int generationCount;
+    private final int variantCount;
+    private final TemplateBuilder builder;
+    private final AtomicReferenceArray<CompletableFuture<TreeTemplate>> templates;
+
+    /**
+     * @param generationCount number of generations, starting from 1
+     */
+    TreeTemplateLibrary(int generationCount, int variantCount, TemplateBuilder builder) {
+        this.generationCount = generationCount;
+        this.variantCount = variantCount;
+        this.builder = builder;
+        this.templates = new AtomicReferenceArray<>(generationCount * variantCount);
+    }
+
+    public int getVariantCount() {
+        return variantCount;
+    }
+
+    /**
+     * Builds all the templates not built yet on the executor.
+     */
+    public void prepare(Executor executor) {
+        for (int generation = 1; generation <= generationCount; generation++) {
+            for (int variant = 0; variant < variantCount; variant++) {
+                int templateGeneration = generation;
+                int templateVariant = variant;
+                executor.execute(() -> getTemplate(templateGeneration, templateVariant));
+            }
+        }
+    }
+
+    /**
+     * @return the template, built by the calling thread or waited for, if it is not built yet
+     */
+    public TreeTemplate getTemplate(int generation, int variant) {
+        int index = (generation - 1) * variantCount + variant;
+        CompletableFuture<TreeTemplate> template = templates.get(index);
+        if (template == null) {
+            CompletableFuture<TreeTemplate> newTemplate = new CompletableFuture<>();
+            if (templates.compareAndSet(index, null, newTemplate)) {
+                try {
+                    newTemplate.complete(builder.build(generation, variant));
+                } catch (RuntimeException e) {
+                    newTemplate.completeExceptionally(e);
+                }
+            }
+            template = templates.get(index);
+        }
+        return template.join();
+    }
+
+    interface TemplateBuilder {
+        TreeTemplate build(int generation, int variant);
+    }
+
+    static final class TreeTemplate {
+        private final LSystemTreeComponent component;
+        private final CompiledAxion axion;
+        private final TreeStructure treeStructure;
+
+        /**
+         * @param component     state of the tree, copied into the trees placed from the template
+         * @param treeStructure structure of the tree, generated high enough for no block to be cut off by the bottom
+         *                      of the world
+         */
+        TreeTemplate(LSystemTreeComponent component, CompiledAxion axion, TreeStructure treeStructure) {
+            this.component = component;
+            this.axion = axion;
+            this.treeStructure = treeStructure;
+        }
+
+        public CompiledAxion getAxion() {
+            return axion;
+        }
+
+        public void setupComponent(LSystemTreeComponent lSystemTree) {
+            lSystemTree.copyFrom(component);
+        }
+
+        /**
+         * @return structure of the tree placed at the location, or <code>null</code> if some of its blocks would be
+         * below the bottom of the world, in which case the tree has to be generated for the location
+         */
+        public TreeStructure placeAt(Vector3ic location) {
+            int lowestBlock = treeStructure.getTreeRegion().minY() - treeStructure.getRoot().y();
+            if (location.y() + lowestBlock < 0) {
+                return null;
+            }
+            return treeStructure.translate(location);
+        }
+    }
+}
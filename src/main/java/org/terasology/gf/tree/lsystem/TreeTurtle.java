@@ -0,0 +1,162 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Matrix4f;
+import org.joml.Matrix4fc;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.joml.Vector3fc;
+import org.joml.Vector3ic;
+
+import java.util.Arrays;
+
+/**
+ * Turtle interpreting an axion into a {@link TreeStructure}.
+ * <p>
+ * The state of the turtle is an orientation quaternion and a position relative to the root of the tree. Branches save
+ * the state into preallocated primitive stacks, and emitted blocks are written into the structure as packed integer
+ * coordinates, so interpreting an axion does not create garbage per element.
+ * <p>
+ * Blocks are rounded relative to the root, so the structure of an axion is the same wherever the tree stands and can be
+ * translated from a template or a cached structure. Trees grown before positions were root-relative were rounded at
+ * their absolute float position, which loses precision far from the origin. A block of such a tree can therefore
+ * be one block off from its current structure, when its offset from the root falls on a rounding boundary. The block
+ * is then not recognized as part of the tree and is left in the world, as growth and felling only touch blocks whose
+ * family matches the structure.
+ */
+final class TreeTurtle implements AxionElementGeneration.AxionElementGenerationCallback {
+    private static final int STATE_SIZE = 7;
+
+    private final TreeStructure treeStructure;
+    private final int rootY;
+
+    private final Quaternionf orientation = new Quaternionf();
+    private final Vector3f position = new Vector3f();
+    private final Vector3f workVector = new Vector3f();
+    private final Matrix4f rotation = new Matrix4f();
+    private boolean rotationDirty = true;
+
+    private float[] stateStack = new float[STATE_SIZE * 8];
+    private TreeStructure.BranchLocation[] branchStack = new TreeStructure.BranchLocation[8];
+    private int depth;
+
+    private TreeStructure.BranchLocation branchLocation;
+    private int axionIndex;
+
+    TreeTurtle(TreeStructure treeStructure, float treeRotation) {
+        this.treeStructure = treeStructure;
+        Vector3ic root = treeStructure.getRoot();
+        this.rootY = root.y();
+        this.branchLocation = treeStructure.getRootBranch();
+        orientation.setAngleAxis(treeRotation, 0, 1, 0);
+    }
+
+    public void setAxionIndex(int axionIndex) {
+        this.axionIndex = axionIndex;
+    }
+
+    /**
+     * @return position of the turtle relative to the root of the tree, valid until the turtle moves
+     */
+    public Vector3fc getPosition() {
+        return position;
+    }
+
+    /**
+     * @return rotation of the turtle, valid until the turtle turns
+     */
+    public Matrix4fc getRotation() {
+        if (rotationDirty) {
+            rotation.rotation(orientation);
+            rotationDirty = false;
+        }
+        return rotation;
+    }
+
+    /**
+     * Turns the turtle around the axis in its own frame of reference.
+     */
+    public void rotateAxis(float angle, float axisX, float axisY, float axisZ) {
+        orientation.rotateAxis(angle, axisX, axisY, axisZ);
+        rotationDirty = true;
+    }
+
+    /**
+     * Turns the turtle by the rotation quaternion in its own frame of reference.
+     */
+    public void rotate(float rotationX, float rotationY, float rotationZ, float rotationW) {
+        orientation.mul(rotationX, rotationY, rotationZ, rotationW);
+        rotationDirty = true;
+    }
+
+    /**
+     * Saves the state of the turtle and starts a new branch at the axion index.
+     */
+    public void startBranch(int branchStartIndex) {
+        if (depth == branchStack.length) {
+            branchStack = Arrays.copyOf(branchStack, depth * 2);
+            stateStack = Arrays.copyOf(stateStack, depth * 2 * STATE_SIZE);
+        }
+        int offset = depth * STATE_SIZE;
+        stateStack[offset] = orientation.x;
+        stateStack[offset + 1] = orientation.y;
+        stateStack[offset + 2] = orientation.z;
+        stateStack[offset + 3] = orientation.w;
+        stateStack[offset + 4] = position.x;
+        stateStack[offset + 5] = position.y;
+        stateStack[offset + 6] = position.z;
+        branchStack[depth] = branchLocation;
+        depth++;
+
+        branchLocation = branchLocation.addBranch(branchStartIndex);
+    }
+
+    /**
+     * Ends the current branch and restores the state of the turtle from before it started.
+     */
+    public void endBranch() {
+        if (depth == 0) {
+            throw new IllegalStateException("Invalid axion - branch end without a branch start");
+        }
+        depth--;
+        int offset = depth * STATE_SIZE;
+        orientation.set(stateStack[offset], stateStack[offset + 1], stateStack[offset + 2], stateStack[offset + 3]);
+        position.set(stateStack[offset + 4], stateStack[offset + 5], stateStack[offset + 6]);
+        branchLocation = branchStack[depth];
+        branchStack[depth] = null;
+        rotationDirty = true;
+    }
+
+    @Override
+    public void setMainBlock(Vector3fc blockPosition, TreeBlockDefinition blockDefinition) {
+        int y = toBlockCoordinate(blockPosition.y());
+        if (rootY + y >= 0) {
+            long packedPosition = TreeBlockMap.pack(toBlockCoordinate(blockPosition.x()), y, toBlockCoordinate(blockPosition.z()));
+            branchLocation.setMainBlock(axionIndex, packedPosition);
+            branchLocation.addTreeBlock(axionIndex, packedPosition, treeStructure.getPaletteIndex(blockDefinition));
+        }
+    }
+
+    @Override
+    public void setAdditionalBlock(Vector3fc blockPosition, TreeBlockDefinition blockDefinition) {
+        int y = toBlockCoordinate(blockPosition.y());
+        if (rootY + y >= 0) {
+            long packedPosition = TreeBlockMap.pack(toBlockCoordinate(blockPosition.x()), y, toBlockCoordinate(blockPosition.z()));
+            branchLocation.addTreeBlock(axionIndex, packedPosition, treeStructure.getPaletteIndex(blockDefinition));
+        }
+    }
+
+    @Override
+    public void advance(float distance) {
+        orientation.transform(0, distance, 0, workVector);
+        position.add(workVector);
+    }
+
+    /**
+     * @param coordinate coordinate relative to the root of the tree
+     */
+    private static int toBlockCoordinate(float coordinate) {
+        return (int) Math.floor(coordinate + 0.5f);
+    }
+}
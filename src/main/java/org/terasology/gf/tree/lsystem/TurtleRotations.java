@@ -0,0 +1,77 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Quaternionf;
+
+/**
+ * Precomputed rotations of the turtle operators.
+ * <p>
+ * Rotations for whole-degree parameters are shared by all trees, rotations by the branch angle of a tree are computed
+ * once per tree. Other parameters are rotated by directly.
+ */
+final class TurtleRotations {
+    public static final int PITCH_DOWN = 0;
+    public static final int PITCH_UP = 1;
+    public static final int TURN_LEFT = 2;
+    public static final int TURN_RIGHT = 3;
+    public static final int ROLL_LEFT = 4;
+    public static final int ROLL_RIGHT = 5;
+
+    private static final int OPERATOR_COUNT = 6;
+    private static final int DEGREES = 360;
+    private static final float[][] AXES = {{1, 0, 0}, {-1, 0, 0}, {0, 1, 0}, {0, -1, 0}, {0, 0, 1}, {0, 0, -1}};
+
+    // Quaternion components for every operator and whole degree
+    private static final float[] DEGREE_ROTATIONS = new float[OPERATOR_COUNT * DEGREES * 4];
+
+    static {
+        Quaternionf rotation = new Quaternionf();
+        for (int operator = 0; operator < OPERATOR_COUNT; operator++) {
+            for (int degrees = 0; degrees < DEGREES; degrees++) {
+                rotation.identity().rotateAxis((float) Math.toRadians(degrees), AXES[operator][0], AXES[operator][1], AXES[operator][2]);
+                store(rotation, DEGREE_ROTATIONS, (operator * DEGREES + degrees) * 4);
+            }
+        }
+    }
+
+    private final float[] defaultRotations = new float[OPERATOR_COUNT * 4];
+
+    /**
+     * @param defaultAngle angle in radians used by operators without a parameter
+     */
+    TurtleRotations(float defaultAngle) {
+        Quaternionf rotation = new Quaternionf();
+        for (int operator = 0; operator < OPERATOR_COUNT; operator++) {
+            rotation.identity().rotateAxis(defaultAngle, AXES[operator][0], AXES[operator][1], AXES[operator][2]);
+            store(rotation, defaultRotations, operator * 4);
+        }
+    }
+
+    /**
+     * Turns the turtle as specified by the operator.
+     *
+     * @param parameter angle in degrees, or {@link CompiledAxion#NO_PARAMETER} to turn by the default angle
+     */
+    public void rotate(TreeTurtle turtle, int operator, float parameter) {
+        if (Float.isNaN(parameter)) {
+            int offset = operator * 4;
+            turtle.rotate(defaultRotations[offset], defaultRotations[offset + 1], defaultRotations[offset + 2], defaultRotations[offset + 3]);
+            return;
+        }
+        int degrees = (int) parameter;
+        if (degrees == parameter && degrees >= 0 && degrees < DEGREES) {
+            int offset = (operator * DEGREES + degrees) * 4;
+            turtle.rotate(DEGREE_ROTATIONS[offset], DEGREE_ROTATIONS[offset + 1], DEGREE_ROTATIONS[offset + 2], DEGREE_ROTATIONS[offset + 3]);
+        } else {
+            turtle.rotateAxis((float) Math.toRadians(parameter), AXES[operator][0], AXES[operator][1], AXES[operator][2]);
+        }
+    }
+
+    private static void store(Quaternionf rotation, float[] target, int offset) {
+        target[offset] = rotation.x;
+        target[offset + 1] = rotation.y;
+        target[offset + 2] = rotation.z;
+        target[offset + 3] = rotation.w;
+    }
+}
@@ -0,0 +1,30 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.gf.util;
+
+import org.terasology.engine.utilities.random.Random;
+
+/**
+ * Random generating the same sequence as {@link org.terasology.engine.utilities.random.FastRandom} created with the
+ * same seed, which can be reseeded instead of creating a new instance for every seed.
+ */
+public final class ReseedableRandom extends Random {
+    private long seed;
+
+    public ReseedableRandom(long seed) {
+        this.seed = seed;
+    }
+
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    @Override
+    public int nextInt() {
+        seed ^= (seed << 21);
+        seed ^= (seed >>> 35);
+        seed ^= (seed << 4);
+        return (int) seed;
+    }
+}
@@ -0,0 +1,84 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.gf.util;
+
+import org.terasology.engine.utilities.random.Random;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Immutable weighted distribution of values, choosing the same value as
+ * {@link org.terasology.engine.utilities.random.DiscreteDistribution} with the values added in the same order.
+ * <p>
+ * A sample consumes a single float of the random, scaled by the total weight, and walks the values in the order they
+ * were added, subtracting their weights until it falls within one. The arithmetic matches the distribution exactly, so
+ * worlds generated before keep their flora. Values and weights are kept in plain arrays and a sampler, being immutable,
+ * can be shared by any number of threads.
+ */
+public final class WeightedSampler<T> {
+    private final Object[] values;
+    private final float[] weights;
+    private final float totalWeight;
+
+    private WeightedSampler(Object[] values, float[] weights, float totalWeight) {
+        this.values = values;
+        this.weights = weights;
+        this.totalWeight = totalWeight;
+    }
+
+    public static <T> Builder<T> builder() {
+        return new Builder<>();
+    }
+
+    public boolean isEmpty() {
+        return values.length == 0;
+    }
+
+    /**
+     * @return a value chosen with the probability proportional to its weight, or <code>null</code> if the sampler is
+     * empty
+     */
+    @SuppressWarnings("unchecked")
+    public T sample(Random random) {
+        float position = random.nextFloat() * totalWeight;
+        for (int i = 0; i < values.length; i++) {
+            float weight = weights[i];
+            if (position < weight) {
+                return (T) values[i];
+            }
+            position -= weight;
+        }
+        return null;
+    }
+
+    public static final class Builder<T> {
+        private final List<T> values = new ArrayList<>();
+        private final List<Float> weights = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds the value with the weight, values without a positive weight are never sampled.
+         */
+        public Builder<T> add(T value, float weight) {
+            if (weight > 0) {
+                values.add(value);
+                weights.add(weight);
+            }
+            return this;
+        }
+
+        public WeightedSampler<T> build() {
+            float[] weightArray = new float[weights.size()];
+            float totalWeight = 0;
+            for (int i = 0; i < weightArray.length; i++) {
+                weightArray[i] = weights.get(i);
+                totalWeight += weightArray[i];
+            }
+            return new WeightedSampler<>(values.toArray(), weightArray, totalWeight);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class PlantUpdateSchedulerTest {
+    @Test
+    public void testPollsByPriorityThenScheduleOrder() {
+        PlantUpdateScheduler scheduler = new PlantUpdateScheduler();
+        EntityRef far = mock(EntityRef.class);
+        EntityRef near = mock(EntityRef.class);
+        EntityRef sameDistanceFirst = mock(EntityRef.class);
+        EntityRef sameDistanceSecond = mock(EntityRef.class);
+        scheduler.schedule(far, 900f);
+        scheduler.schedule(sameDistanceFirst, 100f);
+        scheduler.schedule(near, 4f);
+        scheduler.schedule(sameDistanceSecond, 100f);
+
+        assertEquals(near, scheduler.poll());
+        assertEquals(sameDistanceFirst, scheduler.poll());
+        assertEquals(sameDistanceSecond, scheduler.poll());
+        assertEquals(far, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void testScheduledOnce() {
+        PlantUpdateScheduler scheduler = new PlantUpdateScheduler();
+        EntityRef plant = mock(EntityRef.class);
+        assertTrue(scheduler.schedule(plant, 10f));
+        assertFalse(scheduler.schedule(plant, 1f));
+        assertEquals(1, scheduler.size());
+
+        assertEquals(plant, scheduler.poll());
+        assertNull(scheduler.poll());
+        assertTrue(scheduler.schedule(plant, 1f));
+    }
+
+    @Test
+    public void testRemovedPlantIsNotPolled() {
+        PlantUpdateScheduler scheduler = new PlantUpdateScheduler();
+        EntityRef removed = mock(EntityRef.class);
+        EntityRef kept = mock(EntityRef.class);
+        scheduler.schedule(removed, 1f);
+        scheduler.schedule(kept, 2f);
+        scheduler.remove(removed);
+
+        assertFalse(scheduler.isScheduled(removed));
+        assertEquals(kept, scheduler.poll());
+        assertNull(scheduler.poll());
+        assertEquals(0, scheduler.size());
+    }
+}
@@ -0,0 +1,171 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.terasology.biomesAPI.Biome;
+import org.terasology.core.world.generator.facets.BiomeFacet;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockRegionc;
+import org.terasology.engine.world.chunks.Chunk;
+import org.terasology.engine.world.generation.Region;
+import org.terasology.engine.world.generator.plugin.WorldGeneratorPluginLibrary;
+import org.terasology.gestalt.naming.Name;
+import org.terasology.gf.PlantRegistry;
+import org.terasology.gf.PlantType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FloraFeatureGeneratorTest {
+    private TestRegion region;
+
+    @BeforeEach
+    public void setup() {
+        List<PlantSpawnDefinition> definitions = Arrays.asList(
+                new TestSpawnDefinition(PlantType.TREE, "test:forest", "test:oak", 2f, 0.8f, 2, 5),
+                new TestSpawnDefinition(PlantType.TREE, "test:forest", "test:pine", 1f, 0.8f, 1, 7),
+                new TestSpawnDefinition(PlantType.TREE, "test:plains", "test:birch", 1f, 0.5f, 2, 4),
+                new TestSpawnDefinition(PlantType.BUSH, "test:forest", "test:bush", 1f, 0.6f, 1, 1),
+                new TestSpawnDefinition(PlantType.GRASS, "test:forest", "test:fern", 1f, 0.9f, 0, 1),
+                new TestSpawnDefinition(PlantType.GRASS, "test:plains", "test:grass", 3f, 0.9f, 0, 1),
+                new TestSpawnDefinition(PlantType.GRASS, "test:plains", "test:flower", 1f, 0.9f, 0, 1));
+        WorldGeneratorPluginLibrary pluginLibrary = mock(WorldGeneratorPluginLibrary.class);
+        when(pluginLibrary.instantiateAllOfType(PlantGrowthDefinition.class)).thenReturn(Collections.emptyList());
+        when(pluginLibrary.instantiateAllOfType(PlantSpawnDefinition.class)).thenReturn(definitions);
+        CoreRegistry.setContext(new ContextImpl());
+        CoreRegistry.put(PlantRegistry.class, mock(PlantRegistry.class));
+        CoreRegistry.put(WorldGeneratorPluginLibrary.class, pluginLibrary);
+
+        region = FloraPlacementProviderTest.createRegion(FloraPlacementProviderTest.createSurfaces());
+        DenseFloraProvider floraProvider = new DenseFloraProvider(0);
+        FloraPlacementProvider placementProvider = new FloraPlacementProvider(0.05f, 0.2f, 0.4f);
+        floraProvider.setSeed(1234);
+        placementProvider.setSeed(1234);
+        floraProvider.process(region);
+        placementProvider.process(region);
+
+        Biome forest = mock(Biome.class);
+        when(forest.getId()).thenReturn(new Name("test:forest"));
+        Biome plains = mock(Biome.class);
+        when(plains.getId()).thenReturn(new Name("test:plains"));
+        BiomeFacet biomeFacet = mock(BiomeFacet.class);
+        when(biomeFacet.getWorld(anyInt(), anyInt())).thenAnswer(invocation ->
+                (int) invocation.getArgument(0) + (int) invocation.getArgument(1) < 12 ? forest : plains);
+        region.setRegionFacet(BiomeFacet.class, biomeFacet);
+    }
+
+    @AfterEach
+    public void teardown() {
+        CoreRegistry.setContext(null);
+    }
+
+    @Test
+    public void testParallelGenerationMatchesSequential() {
+        FloraFeatureGenerator sequential = new FloraFeatureGenerator(false);
+        sequential.initialize();
+        List<String> sequentialBlocks = generateChunk(sequential);
+
+        FloraFeatureGenerator parallel = new FloraFeatureGenerator(true);
+        parallel.initialize();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(sequentialBlocks, generateChunk(parallel));
+        }
+        assertTrue(sequentialBlocks.size() > 100);
+    }
+
+    /**
+     * @return the blocks set in the chunk, in the order they were set
+     */
+    private List<String> generateChunk(FloraFeatureGenerator generator) {
+        List<String> placedBlocks = new ArrayList<>();
+        Chunk chunk = mock(Chunk.class);
+        when(chunk.getRegion()).thenReturn(region.getRegion());
+        when(chunk.setBlock(anyInt(), anyInt(), anyInt(), any(Block.class))).thenAnswer(invocation -> {
+            placedBlocks.add(invocation.getArgument(0) + " " + invocation.getArgument(1) + " " + invocation.getArgument(2)
+                    + " " + invocation.getArgument(3).toString());
+            return null;
+        });
+        generator.generateChunk(chunk, region);
+        return placedBlocks;
+    }
+
+    /**
+     * Places a box of its block above the ground, overlapping the boxes of the neighbouring plants.
+     */
+    private static final class TestSpawnDefinition implements PlantSpawnDefinition {
+        private final PlantType plantType;
+        private final Name biomeId;
+        private final String plantId;
+        private final float rarity;
+        private final float probability;
+        private final int radius;
+        private final int height;
+        private final Block block;
+
+        private TestSpawnDefinition(PlantType plantType, String biomeId, String plantId, float rarity, float probability, int radius, int height) {
+            this.plantType = plantType;
+            this.biomeId = new Name(biomeId);
+            this.plantId = plantId;
+            this.rarity = rarity;
+            this.probability = probability;
+            this.radius = radius;
+            this.height = height;
+            this.block = mock(Block.class);
+            when(block.toString()).thenReturn(plantId);
+        }
+
+        @Override
+        public PlantType getPlantType() {
+            return plantType;
+        }
+
+        @Override
+        public Name getBiomeId() {
+            return biomeId;
+        }
+
+        @Override
+        public float getRarity() {
+            return rarity;
+        }
+
+        @Override
+        public float getProbability() {
+            return probability;
+        }
+
+        @Override
+        public String getPlantId() {
+            return plantId;
+        }
+
+        @Override
+        public void generatePlant(long seed, Chunk chunk, int x, int y, int z, Region chunkRegion) {
+            BlockRegionc chunkBounds = chunk.getRegion();
+            for (int blockX = x - radius; blockX <= x + radius; blockX++) {
+                for (int blockZ = z - radius; blockZ <= z + radius; blockZ++) {
+                    for (int blockY = y + 1; blockY <= y + height; blockY++) {
+                        if (chunkBounds.contains(blockX, blockY, blockZ)) {
+                            chunk.setBlock(blockX - chunkBounds.minX(), blockY - chunkBounds.minY(), blockZ - chunkBounds.minZ(), block);
+                        }
+                    }
+                }
+            }
+        }
+    }
+}
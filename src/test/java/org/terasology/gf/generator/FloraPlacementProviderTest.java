@@ -0,0 +1,121 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.joml.Vector3ic;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.facets.SurfacesFacet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class FloraPlacementProviderTest {
+    private static final long SEED = 1234;
+    private static final float TREE_AMOUNT = 0.05f;
+    private static final float BUSH_AMOUNT = 0.2f;
+    private static final float FOLIAGE_AMOUNT = 0.4f;
+
+    @Test
+    public void testMatchesSeparateProviders() {
+        SurfacesFacet surfaces = createSurfaces();
+        List<String> expected = classifyWithSeparateProviders(surfaces);
+        List<String> placements = classifyWithPlacementProvider(surfaces);
+
+        assertEquals(expected, placements);
+        Set<Character> types = new HashSet<>();
+        for (String placement : placements) {
+            types.add(placement.charAt(0));
+        }
+        assertEquals(new HashSet<>(Arrays.asList('T', 'B', 'F')), types);
+    }
+
+    /**
+     * Ground of varying height, with a second surface in some of the columns.
+     */
+    static SurfacesFacet createSurfaces() {
+        SurfacesFacet surfaces = mock(SurfacesFacet.class);
+        when(surfaces.getWorldColumn(anyInt(), anyInt())).thenAnswer(invocation -> {
+            int x = invocation.getArgument(0);
+            int z = invocation.getArgument(1);
+            int height = 4 + Math.floorMod(7 * x + 3 * z, 11);
+            return Math.floorMod(x, 3) == 0 ? Arrays.asList(height, height + 12) : Arrays.asList(height);
+        });
+        return surfaces;
+    }
+
+    static TestRegion createRegion(SurfacesFacet surfaces) {
+        TestRegion region = new TestRegion(new BlockRegion(0, 0, 0, 15, 31, 15))
+                .withBorder(FloraFacet.class, new Border3D(0, 35, 13))
+                .withBorder(DenseFloraFacet.class, new Border3D(0, 35, 13));
+        region.setRegionFacet(SurfacesFacet.class, surfaces);
+        return region;
+    }
+
+    /**
+     * Placements of the legacy generation, trees first, then bushes and foliage at the positions still free.
+     */
+    private static List<String> classifyWithSeparateProviders(SurfacesFacet surfaces) {
+        TestRegion region = createRegion(surfaces);
+        FloraProvider floraProvider = new FloraProvider(0);
+        TreeProvider treeProvider = new TreeProvider(TREE_AMOUNT);
+        BushProvider bushProvider = new BushProvider(BUSH_AMOUNT);
+        FoliageProvider foliageProvider = new FoliageProvider(FOLIAGE_AMOUNT);
+        floraProvider.setSeed(SEED);
+        treeProvider.setSeed(SEED);
+        bushProvider.setSeed(SEED);
+        foliageProvider.setSeed(SEED);
+        floraProvider.process(region);
+        treeProvider.process(region);
+        bushProvider.process(region);
+        foliageProvider.process(region);
+
+        List<String> result = new ArrayList<>();
+        Set<Vector3ic> occupied = new HashSet<>();
+        addPlacements(result, occupied, 'T', region.getFacet(TreeFacet.class).getWorldEntries());
+        addPlacements(result, occupied, 'B', region.getFacet(BushFacet.class).getWorldEntries());
+        addPlacements(result, occupied, 'F', region.getFacet(FoliageFacet.class).getWorldEntries());
+        return result;
+    }
+
+    private static void addPlacements(List<String> result, Set<Vector3ic> occupied, char type, Map<Vector3ic, Float> entries) {
+        for (Map.Entry<Vector3ic, Float> entry : entries.entrySet()) {
+            Vector3ic position = entry.getKey();
+            if (occupied.add(position)) {
+                result.add(describe(type, position.x(), position.y(), position.z(), entry.getValue()));
+            }
+        }
+    }
+
+    private static List<String> classifyWithPlacementProvider(SurfacesFacet surfaces) {
+        TestRegion region = createRegion(surfaces);
+        DenseFloraProvider floraProvider = new DenseFloraProvider(0);
+        FloraPlacementProvider placementProvider = new FloraPlacementProvider(TREE_AMOUNT, BUSH_AMOUNT, FOLIAGE_AMOUNT);
+        floraProvider.setSeed(SEED);
+        placementProvider.setSeed(SEED);
+        floraProvider.process(region);
+        placementProvider.process(region);
+
+        FloraPlacementFacet facet = region.getFacet(FloraPlacementFacet.class);
+        List<String> result = new ArrayList<>();
+        facet.forEachPlacement(FloraPlacementFacet.TREE, (x, y, z, seed) -> result.add(describe('T', x, y, z, seed)));
+        facet.forEachPlacement(FloraPlacementFacet.BUSH, (x, y, z, seed) -> result.add(describe('B', x, y, z, seed)));
+        facet.forEachPlacement(FloraPlacementFacet.FOLIAGE, (x, y, z, seed) -> result.add(describe('F', x, y, z, seed)));
+        assertEquals(result.size(), facet.getPlacementCount());
+        return result;
+    }
+
+    private static String describe(char type, int x, int y, int z, float seed) {
+        return type + " " + x + " " + y + " " + z + " " + seed;
+    }
+}
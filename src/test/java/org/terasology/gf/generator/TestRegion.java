@@ -0,0 +1,55 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.generator;
+
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.generation.Border3D;
+import org.terasology.engine.world.generation.GeneratingRegion;
+import org.terasology.engine.world.generation.Region;
+import org.terasology.engine.world.generation.WorldFacet;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Region the facet providers and rasterizers are run on in tests, holding the facets set by the providers.
+ */
+final class TestRegion implements GeneratingRegion, Region {
+    private final BlockRegion region;
+    private final Map<Class<? extends WorldFacet>, WorldFacet> facets = new HashMap<>();
+    private final Map<Class<? extends WorldFacet>, Border3D> borders = new HashMap<>();
+
+    TestRegion(BlockRegion region) {
+        this.region = region;
+    }
+
+    TestRegion withBorder(Class<? extends WorldFacet> facetClass, Border3D border) {
+        borders.put(facetClass, border);
+        return this;
+    }
+
+    @Override
+    public BlockRegion getRegion() {
+        return region;
+    }
+
+    @Override
+    public <T extends WorldFacet> T getFacet(Class<T> facetClass) {
+        return facetClass.cast(facets.get(facetClass));
+    }
+
+    @Override
+    public <T extends WorldFacet> T getRegionFacet(Class<T> facetClass) {
+        return getFacet(facetClass);
+    }
+
+    @Override
+    public <T extends WorldFacet> void setRegionFacet(Class<T> facetClass, T facet) {
+        facets.put(facetClass, facet);
+    }
+
+    @Override
+    public Border3D getBorderForFacet(Class<? extends WorldFacet> facetClass) {
+        return borders.getOrDefault(facetClass, new Border3D(0, 0, 0));
+    }
+}
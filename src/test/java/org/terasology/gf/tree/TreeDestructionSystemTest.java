@@ -0,0 +1,312 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.context.Context;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.entitySystem.entity.EntityManager;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.OnActivatedComponent;
+import org.terasology.engine.entitySystem.prefab.Prefab;
+import org.terasology.engine.entitySystem.prefab.PrefabManager;
+import org.terasology.engine.logic.health.BeforeDestroyEvent;
+import org.terasology.engine.logic.inventory.ItemComponent;
+import org.terasology.engine.logic.inventory.events.DropItemEvent;
+import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.registry.InjectionHelper;
+import org.terasology.engine.world.BlockEntityRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockComponent;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.BlockUri;
+import org.terasology.engine.world.block.entity.CreateBlockDropsEvent;
+import org.terasology.engine.world.block.family.BlockFamily;
+import org.terasology.engine.world.block.items.BlockItemComponent;
+import org.terasology.gestalt.entitysystem.component.Component;
+import org.terasology.gestalt.entitysystem.event.Event;
+import org.terasology.gf.LivingPlantComponent;
+import org.terasology.gf.PlantRegistry;
+import org.terasology.gf.generator.ConnectedPlantGrowthDefinition;
+import org.terasology.gf.tree.lsystem.AdvancedLSystemTreeDefinition;
+import org.terasology.gf.tree.lsystem.DefaultAxionElementGeneration;
+import org.terasology.gf.tree.lsystem.LSystemBasedTreeGrowthDefinition;
+import org.terasology.gf.tree.lsystem.LSystemTreeComponent;
+import org.terasology.gf.tree.lsystem.TreeBlockDefinition;
+import org.terasology.gf.tree.lsystem.TreeOwnershipIndex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TreeDestructionSystemTest {
+    private static final Vector3ic ROOT = new Vector3i(0, 0, 0);
+
+    private final Map<Vector3ic, Block> world = new HashMap<>();
+    private final Map<BlockFamily, List<Integer>> droppedStacks = new HashMap<>();
+    private PlantRegistry plantRegistry;
+    private TreeDestructionSystem system;
+    private Block air;
+    private Block trunk;
+    private Block leaf;
+    private Block fruit;
+
+    @BeforeEach
+    public void setup() {
+        air = mock(Block.class);
+        trunk = createBlock(false);
+        leaf = createBlock(true);
+        fruit = createBlock(true);
+
+        BlockFamily trunkFamily = trunk.getBlockFamily();
+        BlockManager blockManager = mock(BlockManager.class);
+        when(blockManager.getBlock(BlockManager.AIR_ID)).thenReturn(air);
+        when(blockManager.getBlock(any(BlockUri.class))).thenReturn(trunk);
+        when(blockManager.getBlockFamily(any(BlockUri.class))).thenReturn(trunkFamily);
+
+        EntityRef worldEntity = mock(EntityRef.class);
+        when(worldEntity.send(any(Event.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        WorldProvider worldProvider = mock(WorldProvider.class);
+        when(worldProvider.getWorldEntity()).thenReturn(worldEntity);
+        when(worldProvider.isBlockRelevant(any(Vector3ic.class))).thenReturn(true);
+        when(worldProvider.getBlock(any(Vector3ic.class))).thenAnswer(invocation -> world.getOrDefault(invocation.getArgument(0), air));
+        when(worldProvider.setBlocks(any())).thenAnswer(invocation -> {
+            Map<Vector3ic, Block> blocks = invocation.getArgument(0);
+            blocks.forEach((position, block) -> world.put(new Vector3i(position), block));
+            return Collections.emptyMap();
+        });
+
+        EntityRef noEntity = mock(EntityRef.class);
+        BlockEntityRegistry blockEntityRegistry = mock(BlockEntityRegistry.class);
+        when(blockEntityRegistry.getExistingBlockEntityAt(any(Vector3ic.class))).thenReturn(noEntity);
+        when(blockEntityRegistry.getBlockEntityAt(any(Vector3ic.class))).thenAnswer(invocation -> createBlockEntity(invocation.getArgument(0)));
+
+        EntityManager entityManager = mock(EntityManager.class);
+        when(entityManager.create(anyString())).thenAnswer(invocation -> createItem());
+        PrefabManager prefabManager = mock(PrefabManager.class);
+        when(prefabManager.getPrefab(anyString())).thenReturn(mock(Prefab.class));
+
+        ConnectedPlantGrowthDefinition treeDefinition = mock(ConnectedPlantGrowthDefinition.class);
+        when(treeDefinition.getBlocksConnectedTo(any(), any(), any(Vector3ic.class), any(EntityRef.class)))
+                .thenAnswer(invocation -> getBlocksAbove(invocation.getArgument(2)));
+        plantRegistry = mock(PlantRegistry.class);
+        when(plantRegistry.getPlantGrowthDefinition("test:tree")).thenReturn(treeDefinition);
+
+        Context context = new ContextImpl();
+        context.put(BlockManager.class, blockManager);
+        context.put(WorldProvider.class, worldProvider);
+        context.put(BlockEntityRegistry.class, blockEntityRegistry);
+        context.put(EntityManager.class, entityManager);
+        context.put(PrefabManager.class, prefabManager);
+        context.put(PlantRegistry.class, plantRegistry);
+        system = new TreeDestructionSystem();
+        InjectionHelper.inject(system, context);
+        system.initialise();
+
+        CoreRegistry.setContext(new ContextImpl());
+        CoreRegistry.put(BlockManager.class, blockManager);
+        CoreRegistry.put(TreeOwnershipIndex.class, new TreeOwnershipIndex());
+        CoreRegistry.put(TreeDestructionSystem.class, system);
+    }
+
+    @AfterEach
+    public void teardown() {
+        CoreRegistry.setContext(null);
+    }
+
+    @Test
+    public void testDropsAreMergedIntoItemStacks() {
+        // A 5x5 trunk of 6 blocks, with 20 leaves and 5 fruits with drop rules of their own above
+        fill(-2, 1, -2, 2, 6, 2, trunk);
+        fill(-2, 7, -2, 1, 7, 2, leaf);
+        fill(-2, 8, 0, 2, 8, 0, fruit);
+        createTree("test:tree", new LSystemTreeComponent());
+
+        cut(ROOT);
+
+        assertEquals(Arrays.asList(64, 64, 22), droppedStacks.get(trunk.getBlockFamily()));
+        assertEquals(Collections.singletonList(20), droppedStacks.get(leaf.getBlockFamily()));
+        assertNull(droppedStacks.get(fruit.getBlockFamily()));
+        assertEquals(0, getBlocksAbove(ROOT).size());
+    }
+
+    @Test
+    public void testTreeCanBeCutAgainWhileFelled() {
+        // A trunk too tall to be felled in a single tick
+        TestTreeGrowthDefinition growthDefinition = new TestTreeGrowthDefinition();
+        when(plantRegistry.getPlantGrowthDefinition("test:lsystem")).thenReturn(growthDefinition);
+        LSystemTreeComponent lSystemTree = new LSystemTreeComponent();
+        lSystemTree.axion = String.join("", Collections.nCopies(600, "N"));
+        EntityRef lSystemTreeEntity = createTree("test:lsystem", lSystemTree);
+        fill(0, 0, 0, 0, 599, 0, trunk);
+        Vector3ic highCut = new Vector3i(0, 300, 0);
+        Vector3ic lowCut = new Vector3i(0, 100, 0);
+        Vector3ic lowerTrunk = new Vector3i(0, 200, 0);
+        Vector3ic upperTrunk = new Vector3i(0, 400, 0);
+
+        cut(highCut);
+        assertTrue(lSystemTreeEntity.hasComponent(FellingTreeComponent.class));
+        assertEquals(trunk, world.get(upperTrunk));
+        // Only the blocks waiting for removal are not owned by the tree anymore
+        AdvancedLSystemTreeDefinition treeDefinition = growthDefinition.getTreeDefinition();
+        assertFalse(treeDefinition.isBlockOwnedByPlant(null, null, upperTrunk, lSystemTreeEntity));
+        assertTrue(treeDefinition.isBlockOwnedByPlant(null, null, lowerTrunk, lSystemTreeEntity));
+
+        cut(lowCut);
+        while (lSystemTreeEntity.hasComponent(FellingTreeComponent.class)) {
+            system.update(0);
+        }
+
+        for (int y = 0; y < 600; y++) {
+            assertEquals(y <= lowCut.y() ? trunk : air, world.get(new Vector3i(0, y, 0)), "Block at " + y);
+        }
+        int droppedCount = 0;
+        for (int stackSize : droppedStacks.get(trunk.getBlockFamily())) {
+            droppedCount += stackSize;
+        }
+        assertEquals(599 - lowCut.y(), droppedCount);
+    }
+
+    private void cut(Vector3ic position) {
+        system.onTreePartDestroyed(mock(BeforeDestroyEvent.class), mock(EntityRef.class), new PartOfTreeComponent(), new BlockComponent(world.get(position), position));
+    }
+
+    private void fill(int minX, int minY, int minZ, int maxX, int maxY, int maxZ, Block block) {
+        for (int x = minX; x <= maxX; x++) {
+            for (int y = minY; y <= maxY; y++) {
+                for (int z = minZ; z <= maxZ; z++) {
+                    world.put(new Vector3i(x, y, z), block);
+                }
+            }
+        }
+    }
+
+    /**
+     * Blocks of the tree in the world above the position, as the tree definition reports the blocks connected to a cut.
+     */
+    private List<Vector3ic> getBlocksAbove(Vector3ic position) {
+        List<Vector3ic> result = new ArrayList<>();
+        for (Map.Entry<Vector3ic, Block> block : world.entrySet()) {
+            if (block.getValue() != air && block.getKey().y() > position.y()) {
+                result.add(block.getKey());
+            }
+        }
+        return result;
+    }
+
+    private Block createBlock(boolean hasPrefab) {
+        Block block = mock(Block.class);
+        BlockFamily family = mock(BlockFamily.class);
+        when(block.getBlockFamily()).thenReturn(family);
+        when(block.getPrefab()).thenReturn(hasPrefab ? Optional.of(mock(Prefab.class)) : Optional.empty());
+        return block;
+    }
+
+    /**
+     * Block entity handling {@link CreateBlockDropsEvent} as the engine does. Fruits have drop rules of their own, which
+     * consume the event, other blocks are left to the default handling of the felling.
+     */
+    private EntityRef createBlockEntity(Vector3ic position) {
+        Block block = world.get(position);
+        BlockComponent blockComponent = new BlockComponent(block, position);
+        EntityRef blockEntity = mock(EntityRef.class);
+        when(blockEntity.exists()).thenReturn(true);
+        when(blockEntity.send(any(CreateBlockDropsEvent.class))).thenAnswer(invocation -> {
+            CreateBlockDropsEvent event = invocation.getArgument(0);
+            if (block == fruit) {
+                event.consume();
+            } else {
+                system.onFelledBlockDrops(event, blockEntity, blockComponent);
+            }
+            return event;
+        });
+        return blockEntity;
+    }
+
+    private EntityRef createItem() {
+        ItemComponent itemComponent = new ItemComponent();
+        itemComponent.maxStackSize = 64;
+        BlockItemComponent blockItemComponent = new BlockItemComponent();
+        EntityRef item = mock(EntityRef.class);
+        when(item.exists()).thenReturn(true);
+        when(item.getComponent(ItemComponent.class)).thenReturn(itemComponent);
+        when(item.addComponent(any(BlockItemComponent.class))).thenAnswer(invocation -> {
+            blockItemComponent.copyFrom(invocation.getArgument(0));
+            return blockItemComponent;
+        });
+        when(item.send(any(DropItemEvent.class))).thenAnswer(invocation -> {
+            droppedStacks.computeIfAbsent(blockItemComponent.blockFamily, family -> new ArrayList<>()).add((int) itemComponent.stackCount);
+            return invocation.getArgument(0);
+        });
+        return item;
+    }
+
+    /**
+     * Tree rooted at {@link #ROOT}, keeping its components as an entity does.
+     */
+    private EntityRef createTree(String type, LSystemTreeComponent lSystemTree) {
+        Map<Class<?>, Component<?>> components = new HashMap<>();
+        EntityRef treeEntity = mock(EntityRef.class);
+        when(treeEntity.exists()).thenReturn(true);
+        when(treeEntity.getComponent(any())).thenAnswer(invocation -> components.get(invocation.getArgument(0)));
+        when(treeEntity.hasComponent(any())).thenAnswer(invocation -> components.containsKey(invocation.getArgument(0)));
+        when(treeEntity.addComponent(any())).thenAnswer(invocation -> {
+            Component<?> component = invocation.getArgument(0);
+            components.put(component.getClass(), component);
+            return component;
+        });
+        doAnswer(invocation -> components.remove(invocation.getArgument(0))).when(treeEntity).removeComponent(any());
+
+        LivingPlantComponent livingPlant = new LivingPlantComponent();
+        livingPlant.type = type;
+        BlockComponent blockComponent = new BlockComponent(trunk, ROOT);
+        treeEntity.addComponent(livingPlant);
+        treeEntity.addComponent(lSystemTree);
+        treeEntity.addComponent(blockComponent);
+        system.onTreeActivated(mock(OnActivatedComponent.class), treeEntity, lSystemTree, blockComponent);
+        return treeEntity;
+    }
+
+    /**
+     * Tree growing straight up, one trunk block for every element of its axion.
+     */
+    private static final class TestTreeGrowthDefinition extends LSystemBasedTreeGrowthDefinition {
+        private final AdvancedLSystemTreeDefinition treeDefinition = new AdvancedLSystemTreeDefinition("test:lsystem", "N",
+                Collections.emptyMap(), Collections.singletonMap('N', new DefaultAxionElementGeneration(
+                        new TreeBlockDefinition("test:trunk", PartOfTreeComponent.Part.TRUNK), 1)), 0);
+
+        @Override
+        protected AdvancedLSystemTreeDefinition getTreeDefinition() {
+            return treeDefinition;
+        }
+
+        @Override
+        public String getPlantId() {
+            return "test:lsystem";
+        }
+
+        @Override
+        protected String getGeneratedBlock() {
+            return "test:trunk";
+        }
+    }
+}
@@ -0,0 +1,59 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TreeRootIndexTest {
+    @Test
+    public void testMatchesDistanceToAllTrees() {
+        TreeRootIndex index = new TreeRootIndex();
+        Random random = new Random(5);
+        EntityRef[] trees = new EntityRef[300];
+        Vector3i[] roots = new Vector3i[trees.length];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = mock(EntityRef.class);
+            roots[i] = new Vector3i(random.nextInt(200) - 100, random.nextInt(50), random.nextInt(200) - 100);
+            index.add(trees[i], roots[i]);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            Vector3i position = new Vector3i(random.nextInt(200) - 100, 20, random.nextInt(200) - 100);
+            Set<EntityRef> expected = new HashSet<>();
+            for (int i = 0; i < trees.length; i++) {
+                int distanceX = roots[i].x - position.x;
+                int distanceZ = roots[i].z - position.z;
+                if (distanceX * distanceX + distanceZ * distanceZ < 512) {
+                    expected.add(trees[i]);
+                }
+            }
+            List<EntityRef> near = index.getTreesNear(position, 512);
+            assertEquals(expected.size(), near.size());
+            assertEquals(expected, new HashSet<>(near));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        TreeRootIndex index = new TreeRootIndex();
+        EntityRef tree = mock(EntityRef.class);
+        index.add(tree, new Vector3i(-40, 10, 70));
+        assertEquals(Collections.singletonList(tree), index.getTreesNear(new Vector3i(-35, 0, 75), 512));
+
+        index.remove(tree);
+        assertEquals(0, index.size());
+        assertTrue(index.getTreesNear(new Vector3i(-35, 0, 75), 512).isEmpty());
+    }
+}
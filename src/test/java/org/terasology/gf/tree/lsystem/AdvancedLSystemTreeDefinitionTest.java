@@ -0,0 +1,63 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.utilities.random.FastRandom;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+public class AdvancedLSystemTreeDefinitionTest {
+    private AdvancedLSystemTreeDefinition createDefinition() {
+        Map<Character, AxionElementReplacement> replacements = new HashMap<>();
+        replacements.put('A', new SimpleAxionElementReplacement("NA")
+                .addReplacement(0.3f, "N[&A]A")
+                .addReplacement(0.3f, "N[^A]+A"));
+        return createDefinition(replacements, true);
+    }
+
+    private AdvancedLSystemTreeDefinition createDefinition(Map<Character, AxionElementReplacement> replacements, boolean deterministicGrowth) {
+        AdvancedLSystemTreeDefinition definition = new AdvancedLSystemTreeDefinition("test", "A", replacements, Collections.emptyMap(), 0.5f);
+        definition.setDeterministicGrowth(deterministicGrowth);
+        return definition;
+    }
+
+    @Test
+    public void testGenerationsAreReproducible() {
+        AdvancedLSystemTreeDefinition definition = createDefinition();
+        AdvancedLSystemTreeDefinition otherDefinition = createDefinition();
+
+        assertEquals(CompiledAxion.parse("A"), definition.getAxionForGeneration(42, 0));
+        for (int generation = 1; generation < 20; generation++) {
+            assertEquals(definition.getAxionForGeneration(42, generation), otherDefinition.getAxionForGeneration(42, generation));
+        }
+        // Reconstruction out of order, starting from a cached earlier generation
+        assertEquals(definition.getAxionForGeneration(42, 30), createDefinition().getAxionForGeneration(42, 30));
+    }
+
+    @Test
+    public void testSeedsDiffer() {
+        AdvancedLSystemTreeDefinition definition = createDefinition();
+        assertNotEquals(definition.getAxionForGeneration(1, 20), definition.getAxionForGeneration(2, 20));
+    }
+
+    @Test
+    public void testGrowthModesAgreeOnGeneration() {
+        // Every rewrite adds exactly one element, so the length of the axion tells its generation
+        Map<Character, AxionElementReplacement> replacements = Collections.singletonMap('A', new SimpleAxionElementReplacement("NA"));
+        AdvancedLSystemTreeDefinition deterministic = createDefinition(replacements, true);
+        AdvancedLSystemTreeDefinition stored = createDefinition(replacements, false);
+
+        for (int generation = 0; generation < 10; generation++) {
+            CompiledAxion deterministicAxion = deterministic.growAxion(new LSystemTreeComponent(), new FastRandom(generation), generation);
+            CompiledAxion storedAxion = stored.growAxion(new LSystemTreeComponent(), new FastRandom(generation), generation);
+            assertEquals(generation + 1, deterministicAxion.size());
+            assertEquals(deterministicAxion.size(), storedAxion.size());
+        }
+    }
+}
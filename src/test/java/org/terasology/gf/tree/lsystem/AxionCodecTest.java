@@ -0,0 +1,55 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class AxionCodecTest {
+    @Test
+    public void testRoundTrip() {
+        CompiledAxion axion = new CompiledAxion.Builder()
+                .append('N', 3.3000002f)
+                .append('[')
+                .append('&', 30f)
+                .append('A', 0f)
+                .append('B', -2f)
+                .append('C', -0f)
+                .append(']')
+                .build();
+        assertEquals(axion, AxionCodec.decode(AxionCodec.encode(axion)));
+    }
+
+    @Test
+    public void testLongAxionIsCompressed() {
+        StringBuilder axionString = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            axionString.append("N(2.2)[&(35)A]+");
+        }
+        CompiledAxion axion = CompiledAxion.parse(axionString.toString());
+        byte[] encoded = AxionCodec.encode(axion);
+        assertTrue(encoded.length < axionString.length() / 10);
+        assertEquals(axion, AxionCodec.decode(encoded));
+    }
+
+    @Test
+    public void testLegacyComponent() {
+        LSystemTreeComponent component = new LSystemTreeComponent();
+        component.axion = "N(3)[&A]";
+        assertEquals(CompiledAxion.parse("N(3)[&A]"), AxionCodec.readAxion(component));
+
+        AxionCodec.writeAxion(component, CompiledAxion.parse("N(4)[&A]"));
+        assertNull(component.axion);
+        assertEquals(CompiledAxion.parse("N(4)[&A]"), AxionCodec.readAxion(component));
+    }
+
+    @Test
+    public void testInvalidEncoding() {
+        assertThrows(IllegalArgumentException.class, () -> AxionCodec.decode(new byte[]{1, 0, 5}));
+        assertThrows(IllegalArgumentException.class, () -> AxionCodec.decode(new byte[]{42, 0}));
+    }
+}
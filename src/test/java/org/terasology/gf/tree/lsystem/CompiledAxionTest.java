@@ -0,0 +1,68 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+import org.terasology.engine.utilities.random.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompiledAxionTest {
+    @Test
+    public void testParse() {
+        CompiledAxion axion = CompiledAxion.parse("N(3.5)[&(30)A]");
+        assertEquals(5, axion.size());
+        assertEquals('N', axion.getToken(0));
+        assertEquals(3.5f, axion.getParameter(0));
+        assertEquals('[', axion.getToken(1));
+        assertFalse(axion.hasParameter(1));
+        assertEquals('&', axion.getToken(2));
+        assertEquals(30f, axion.getParameter(2));
+        assertEquals('A', axion.getToken(3));
+        assertFalse(axion.hasParameter(3));
+        assertEquals(']', axion.getToken(4));
+    }
+
+    @Test
+    public void testExport() {
+        CompiledAxion axion = new CompiledAxion.Builder()
+                .append('N', 3.3000002f)
+                .append('[')
+                .append('&', 30f)
+                .append('A')
+                .append(']')
+                .build();
+        assertEquals("N(3.3000002)[&(30)A]", axion.toString());
+        assertEquals(axion, CompiledAxion.parse(axion.toString()));
+    }
+
+    @Test
+    public void testEquality() {
+        assertEquals(CompiledAxion.parse("N(3)A"), CompiledAxion.parse("N(3.0)A"));
+        assertEquals(CompiledAxion.parse("N(3)A").hashCode(), CompiledAxion.parse("N(3.0)A").hashCode());
+        assertNotEquals(CompiledAxion.parse("N(3)A"), CompiledAxion.parse("N(4)A"));
+        assertNotEquals(CompiledAxion.parse("NA"), CompiledAxion.parse("N(0)A"));
+    }
+
+    @Test
+    public void testInvalidAxions() {
+        assertThrows(IllegalArgumentException.class, () -> CompiledAxion.parse("(3)A"));
+        assertThrows(IllegalArgumentException.class, () -> CompiledAxion.parse("N(3"));
+    }
+
+    @Test
+    public void testGrowthReplacement() {
+        GrowthAxionElementReplacement replacement = new GrowthAxionElementReplacement("N", 1.1f);
+        CompiledAxion current = CompiledAxion.parse("N(3)");
+        Random random = Mockito.mock(Random.class);
+
+        CompiledAxion compiled = replacement.getCompiledReplacement(random, 3f, current);
+        assertEquals(CompiledAxion.parse(replacement.getReplacement(random, "3", current.toString())), compiled);
+        assertTrue(compiled.hasParameter(0));
+    }
+}
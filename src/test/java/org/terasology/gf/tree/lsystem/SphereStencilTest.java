@@ -0,0 +1,65 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Matrix4f;
+import org.joml.Quaternionf;
+import org.joml.Vector3f;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class SphereStencilTest {
+    @Test
+    public void testMatchesCubeIteration() {
+        float innerRange = 1.5f;
+        float range = 3.2f;
+        int maxZ = 1;
+        SphereStencil stencil = SphereStencil.get(innerRange, range, maxZ);
+        Matrix4f rotation = new Matrix4f().rotation(new Quaternionf().setAngleAxis(0.7f, 1, 0, 0).rotateAxis(0.3f, 0, 1, 0));
+        float[] offsets = stencil.getRotatedOffsets(rotation);
+
+        Vector3f expected = new Vector3f();
+        int index = 0;
+        int rangeInt = (int) range;
+        for (int x = -rangeInt; x <= rangeInt; x++) {
+            for (int y = -rangeInt; y <= rangeInt; y++) {
+                for (int z = -rangeInt; z <= Math.min(rangeInt, maxZ); z++) {
+                    double distanceSquare = x * x + y * y + z * z;
+                    if (distanceSquare < range * range) {
+                        rotation.transformDirection(expected.set(x, y, z));
+                        assertEquals(distanceSquare < innerRange * innerRange, stencil.isInner(index));
+                        assertEquals(expected.x, offsets[index * 3]);
+                        assertEquals(expected.y, offsets[index * 3 + 1]);
+                        assertEquals(expected.z, offsets[index * 3 + 2]);
+                        index++;
+                    }
+                }
+            }
+        }
+        assertEquals(index, stencil.size());
+    }
+
+    @Test
+    public void testSharing() {
+        SphereStencil stencil = SphereStencil.get(0, 2, Integer.MAX_VALUE);
+        assertSame(stencil, SphereStencil.get(0, 2, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void testRotatedOffsetsBufferIsReused() {
+        SphereStencil stencil = SphereStencil.get(0, 2, Integer.MAX_VALUE);
+        Matrix4f first = new Matrix4f().rotation(new Quaternionf().setAngleAxis(1.1f, 0, 0, 1));
+        Matrix4f second = new Matrix4f().rotation(new Quaternionf().setAngleAxis(0.4f, 1, 0, 0));
+        float[] firstOffsets = stencil.getRotatedOffsets(first);
+        float[] secondOffsets = stencil.getRotatedOffsets(second);
+        assertSame(firstOffsets, secondOffsets);
+
+        Vector3f expected = new Vector3f();
+        second.transformDirection(expected.set(-1, -1, -1));
+        assertEquals(expected.x, secondOffsets[0]);
+        assertEquals(expected.y, secondOffsets[1]);
+        assertEquals(expected.z, secondOffsets[2]);
+    }
+}
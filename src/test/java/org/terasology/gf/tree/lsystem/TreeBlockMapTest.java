@@ -0,0 +1,65 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class TreeBlockMapTest {
+    @Test
+    public void testPackUnpack() {
+        int[][] positions = {{0, 0, 0}, {-1, 2, -3}, {1048575, -1048576, 17}, {-64, 255, 64}};
+        for (int[] position : positions) {
+            long packed = TreeBlockMap.pack(position[0], position[1], position[2]);
+            assertEquals(position[0], TreeBlockMap.unpackX(packed));
+            assertEquals(position[1], TreeBlockMap.unpackY(packed));
+            assertEquals(position[2], TreeBlockMap.unpackZ(packed));
+        }
+        assertNotEquals(TreeBlockMap.pack(1, 0, 0), TreeBlockMap.pack(0, 1, 0));
+        assertNotEquals(TreeBlockMap.pack(-1, 0, 0), TreeBlockMap.pack(0, 0, -1));
+    }
+
+    @Test
+    public void testInsertionOrderAndGrowth() {
+        TreeBlockMap map = new TreeBlockMap(2);
+        int count = 0;
+        for (int x = -10; x <= 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                assertTrue(map.putIfAbsent(TreeBlockMap.pack(x, y, -x), count++));
+            }
+        }
+        assertEquals(count, map.size());
+
+        int index = 0;
+        for (int x = -10; x <= 10; x++) {
+            for (int y = 0; y < 10; y++) {
+                long position = TreeBlockMap.pack(x, y, -x);
+                assertEquals(position, map.getPosition(index));
+                assertEquals(index, map.getValue(index));
+                assertEquals(index, map.indexOf(position));
+                index++;
+            }
+        }
+    }
+
+    @Test
+    public void testPutAndMissingKeys() {
+        TreeBlockMap map = new TreeBlockMap();
+        long position = TreeBlockMap.pack(3, 4, 5);
+        assertFalse(map.contains(position));
+        assertEquals(TreeBlockMap.NOT_FOUND, map.indexOf(position));
+
+        map.put(position, 1);
+        assertFalse(map.putIfAbsent(position, 2));
+        assertEquals(1, map.getValue(map.indexOf(position)));
+
+        map.put(position, 3);
+        assertEquals(1, map.size());
+        assertEquals(3, map.getValue(map.indexOf(position)));
+        assertFalse(map.contains(TreeBlockMap.pack(5, 4, 3)));
+    }
+}
@@ -0,0 +1,82 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.entitySystem.entity.EntityRef;
+import org.terasology.engine.entitySystem.entity.lifecycleEvents.BeforeDeactivateComponent;
+import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.gf.tree.PartOfTreeComponent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class TreeOwnershipIndexTest {
+    private TreeBlockDefinition trunk;
+
+    @BeforeEach
+    public void setup() {
+        CoreRegistry.setContext(new ContextImpl());
+        CoreRegistry.put(BlockManager.class, mock(BlockManager.class));
+        trunk = new TreeBlockDefinition("test:trunk", PartOfTreeComponent.Part.TRUNK);
+    }
+
+    @AfterEach
+    public void teardown() {
+        CoreRegistry.setContext(null);
+    }
+
+    @Test
+    public void testEvictsByBlockCount() {
+        TreeOwnershipIndex index = new TreeOwnershipIndex();
+        index.setMaxIndexedBlocks(1000);
+
+        EntityRef[] trees = new EntityRef[100];
+        for (int i = 0; i < trees.length; i++) {
+            trees[i] = mock(EntityRef.class);
+            index.setTreeStructure(trees[i], createTrunk(50));
+        }
+
+        long indexedCount = index.getIndexedTreeCount();
+        assertTrue(indexedCount > 0);
+        assertTrue(indexedCount * 50 <= 1000, "Indexed " + indexedCount + " trees");
+        assertTrue(index.isIndexed(trees[trees.length - 1]));
+        assertFalse(index.isIndexed(trees[0]));
+    }
+
+    @Test
+    public void testDeactivatedTreeIsRemoved() {
+        TreeOwnershipIndex index = new TreeOwnershipIndex();
+        EntityRef tree = mock(EntityRef.class);
+        EntityRef otherTree = mock(EntityRef.class);
+        TreeStructure treeStructure = createTrunk(5);
+        index.setTreeStructure(tree, treeStructure);
+        index.setTreeStructure(otherTree, createTrunk(5));
+        assertSame(treeStructure, index.getTreeStructure(tree));
+
+        index.onTreeDeactivated(mock(BeforeDeactivateComponent.class), tree, new LSystemTreeComponent());
+
+        assertFalse(index.isIndexed(tree));
+        assertTrue(index.isIndexed(otherTree));
+        assertEquals(1, index.getIndexedTreeCount());
+    }
+
+    private TreeStructure createTrunk(int height) {
+        TreeStructure treeStructure = new TreeStructure(new Vector3i(0, 10, 0));
+        TreeStructure.BranchLocation branch = treeStructure.getRootBranch();
+        for (int y = 0; y < height; y++) {
+            branch.setMainBlock(y, TreeBlockMap.pack(0, y, 0));
+            branch.addTreeBlock(y, TreeBlockMap.pack(0, y, 0), treeStructure.getPaletteIndex(trunk));
+        }
+        treeStructure.complete();
+        return treeStructure;
+    }
+}
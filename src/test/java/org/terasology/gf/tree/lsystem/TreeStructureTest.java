@@ -0,0 +1,279 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Vector3i;
+import org.joml.Vector3ic;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.context.internal.ContextImpl;
+import org.terasology.engine.math.Side;
+import org.terasology.engine.math.SideBitFlag;
+import org.terasology.engine.registry.CoreRegistry;
+import org.terasology.engine.world.WorldProvider;
+import org.terasology.engine.world.block.Block;
+import org.terasology.engine.world.block.BlockManager;
+import org.terasology.engine.world.block.BlockRegion;
+import org.terasology.engine.world.block.BlockUri;
+import org.terasology.engine.world.block.family.BlockFamily;
+import org.terasology.gf.tree.PartOfTreeComponent;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TreeStructureTest {
+    private static final Vector3ic ROOT = new Vector3i(10, 20, -5);
+
+    private final Map<String, Block> blocks = new HashMap<>();
+    private final Map<String, BlockFamily> families = new HashMap<>();
+    private BlockManager blockManager;
+
+    private TreeBlockDefinition trunk;
+    private TreeBlockDefinition branch;
+    private TreeBlockDefinition leaf;
+
+    @BeforeEach
+    public void setup() {
+        blockManager = mock(BlockManager.class);
+        when(blockManager.getBlock(any(BlockUri.class))).thenAnswer(invocation ->
+                blocks.computeIfAbsent(invocation.getArgument(0).toString(), uri -> mock(Block.class)));
+        when(blockManager.getBlockFamily(any(BlockUri.class))).thenAnswer(invocation ->
+                families.computeIfAbsent(invocation.getArgument(0).toString(), uri -> mock(BlockFamily.class)));
+        CoreRegistry.setContext(new ContextImpl());
+        CoreRegistry.put(BlockManager.class, blockManager);
+
+        trunk = new TreeBlockDefinition("test:trunk", PartOfTreeComponent.Part.TRUNK);
+        branch = new TreeBlockDefinition("test:branch", PartOfTreeComponent.Part.BRANCH);
+        leaf = new TreeBlockDefinition("test:leaf", PartOfTreeComponent.Part.LEAF);
+    }
+
+    @AfterEach
+    public void teardown() {
+        CoreRegistry.setContext(null);
+    }
+
+    @Test
+    public void testConnectionsMatchNeighbours() {
+        for (boolean grown : new boolean[]{false, true}) {
+            TreeStructure structure = createTree(grown, null, 0);
+            Map<Vector3ic, TreeBlockDefinition> definitions = getDefinitions(structure);
+            TreeBlockMap structureBlocks = structure.getBlocks();
+            for (int i = 0; i < structureBlocks.size(); i++) {
+                Vector3i position = unpack(structureBlocks.getPosition(i));
+                TreeBlockDefinition definition = definitions.get(position);
+                String expectedUri = definition.isBranchBlock()
+                        ? "test:branch." + getConnections(definitions.keySet(), position)
+                        : definition.getBlockUri();
+                Block block = structure.getBlock(blockManager, i);
+                assertSame(blocks.get(expectedUri), block, expectedUri);
+            }
+        }
+    }
+
+    @Test
+    public void testDeltaMatchesFullComparison() {
+        TreeStructure previous = createTree(false, null, 0);
+        TreeStructure next = createTree(true, null, 0);
+        Map<Vector3ic, TreeBlockDefinition> previousDefinitions = getDefinitions(previous);
+        Map<Vector3ic, TreeBlockDefinition> nextDefinitions = getDefinitions(next);
+
+        Set<Vector3ic> added = new HashSet<>();
+        Set<Vector3ic> changed = new HashSet<>();
+        for (Map.Entry<Vector3ic, TreeBlockDefinition> entry : nextDefinitions.entrySet()) {
+            Vector3ic position = entry.getKey();
+            TreeBlockDefinition previousDefinition = previousDefinitions.get(position);
+            if (previousDefinition == null) {
+                added.add(position);
+            } else if (!previousDefinition.getBlockUri().equals(entry.getValue().getBlockUri())
+                    || entry.getValue().isBranchBlock() && getConnections(previousDefinitions.keySet(), position) != getConnections(nextDefinitions.keySet(), position)) {
+                changed.add(position);
+            }
+        }
+        Set<Vector3ic> removed = new HashSet<>(previousDefinitions.keySet());
+        removed.removeAll(nextDefinitions.keySet());
+
+        TreeDelta delta = next.getDeltaFrom(previous);
+        assertEquals(added, toPositions(delta.getAddedBlocks()));
+        assertEquals(removed, toPositions(delta.getRemovedBlocks()));
+        assertEquals(changed, toPositions(delta.getChangedBlocks()));
+        assertFalse(added.isEmpty());
+        assertFalse(removed.isEmpty());
+        assertFalse(changed.isEmpty());
+    }
+
+    @Test
+    public void testForEachBlockInRegion() {
+        TreeStructure structure = createTree(true, null, 0);
+        BlockRegion[] regions = {
+                // Cuts through both side branches and the trunk
+                new BlockRegion(ROOT.x() - 1, ROOT.y() + 1, ROOT.z() - 1, ROOT.x() + 2, ROOT.y() + 2, ROOT.z()),
+                // Contains only the end of a sub-branch
+                new BlockRegion(ROOT.x() + 2, ROOT.y() + 1, ROOT.z() + 1, ROOT.x() + 5, ROOT.y() + 1, ROOT.z() + 5),
+                new BlockRegion(ROOT.x() - 8, ROOT.y() - 8, ROOT.z() - 8, ROOT.x() + 8, ROOT.y() + 8, ROOT.z() + 8),
+                new BlockRegion(ROOT.x() + 5, ROOT.y(), ROOT.z(), ROOT.x() + 8, ROOT.y() + 8, ROOT.z() + 8)
+        };
+        for (BlockRegion region : regions) {
+            Set<Vector3ic> expected = new HashSet<>();
+            TreeBlockMap structureBlocks = structure.getBlocks();
+            for (int i = 0; i < structureBlocks.size(); i++) {
+                Vector3i position = unpack(structureBlocks.getPosition(i)).add(ROOT);
+                if (region.contains(position)) {
+                    expected.add(position);
+                }
+            }
+
+            Set<Vector3ic> visited = new HashSet<>();
+            structure.forEachBlockIn(region, (blockIndex, x, y, z) -> {
+                assertEquals(new Vector3i(x, y, z), unpack(structureBlocks.getPosition(blockIndex)).add(ROOT));
+                assertTrue(visited.add(new Vector3i(x, y, z)));
+            });
+            assertEquals(expected, visited);
+        }
+    }
+
+    @Test
+    public void testBlocksConnectedToMatchTrimmedTree() {
+        TreeStructure structure = createTree(true, null, 0);
+        Map<Vector3ic, TreeBlockDefinition> definitions = getDefinitions(structure);
+        WorldProvider worldProvider = mock(WorldProvider.class);
+        when(worldProvider.getBlock(any(Vector3ic.class))).thenAnswer(invocation -> {
+            Vector3i position = new Vector3i((Vector3ic) invocation.getArgument(0)).sub(ROOT);
+            BlockFamily family = definitions.get(position).getBlockFamily(blockManager);
+            Block block = mock(Block.class);
+            when(block.getBlockFamily()).thenReturn(family);
+            return block;
+        });
+
+        // Cutting a side branch at its first block, at a block with a sub-branch and the trunk above a side branch
+        Object[][] cuts = {{"side", 3, new Vector3i(1, 1, 0)}, {"side", 4, new Vector3i(2, 1, 0)}, {"root", 9, new Vector3i(0, 2, 0)}};
+        for (Object[] cut : cuts) {
+            Set<Vector3ic> expected = new HashSet<>(definitions.keySet());
+            expected.removeAll(getDefinitions(createTree(true, (String) cut[0], (Integer) cut[1])).keySet());
+
+            Set<Vector3ic> connected = new HashSet<>();
+            for (Vector3ic block : structure.getBlocksConnectedTo(worldProvider, blockManager, new Vector3i((Vector3ic) cut[2]).add(ROOT))) {
+                connected.add(new Vector3i(block).sub(ROOT));
+            }
+            assertFalse(expected.isEmpty());
+            assertEquals(expected, connected);
+        }
+    }
+
+    /**
+     * Builds a small tree with a trunk, two side branches and a sub-branch. The grown tree extends the side branch and
+     * the trunk, and loses a leaf.
+     *
+     * @param trimmedBranch name of the branch to end at the trim index, or <code>null</code>
+     */
+    private TreeStructure createTree(boolean grown, String trimmedBranch, int trimIndex) {
+        TreeStructure structure = new TreeStructure(ROOT);
+        Branch root = new Branch(structure, structure.getRootBranch(), "root".equals(trimmedBranch) ? trimIndex : Integer.MAX_VALUE);
+        root.main(0, 0, 0, 0, trunk);
+        root.main(1, 0, 1, 0, trunk);
+
+        Branch side = root.branch(2, "side".equals(trimmedBranch) ? trimIndex : Integer.MAX_VALUE);
+        side.main(3, 1, 1, 0, branch);
+        side.main(4, 2, 1, 0, branch);
+        side.block(4, 2, 2, 0, leaf);
+        Branch subBranch = side.branch(5, Integer.MAX_VALUE);
+        subBranch.main(6, 2, 1, 1, branch);
+        subBranch.block(6, 2, 1, 2, leaf);
+        subBranch.block(6, 3, 1, 1, leaf);
+        if (!grown) {
+            side.block(7, 3, 1, 0, leaf);
+        } else {
+            side.main(8, 2, 1, -1, branch);
+        }
+
+        root.main(9, 0, 2, 0, trunk);
+        Branch otherSide = root.branch(10, Integer.MAX_VALUE);
+        otherSide.main(11, -1, 2, 0, branch);
+        otherSide.main(12, -1, 2, 1, branch);
+        otherSide.block(12, -1, 3, 1, leaf);
+
+        root.main(13, 0, 3, 0, trunk);
+        root.block(13, 0, 4, 0, leaf);
+        root.block(13, 1, 3, 0, leaf);
+        if (grown) {
+            root.main(14, 0, 4, 0, trunk);
+            root.block(14, 0, 5, 0, leaf);
+        }
+        structure.complete();
+        return structure;
+    }
+
+    private static Map<Vector3ic, TreeBlockDefinition> getDefinitions(TreeStructure structure) {
+        Map<Vector3ic, TreeBlockDefinition> result = new HashMap<>();
+        TreeBlockMap structureBlocks = structure.getBlocks();
+        for (int i = 0; i < structureBlocks.size(); i++) {
+            result.put(unpack(structureBlocks.getPosition(i)), structure.getDefinition(structureBlocks.getValue(i)));
+        }
+        return result;
+    }
+
+    private static byte getConnections(Set<Vector3ic> positions, Vector3ic position) {
+        byte connections = 0;
+        for (Side side : Side.values()) {
+            if (positions.contains(new Vector3i(position).add(side.direction()))) {
+                connections |= SideBitFlag.getSide(side);
+            }
+        }
+        return connections;
+    }
+
+    private static Set<Vector3ic> toPositions(TreeBlockMap map) {
+        Set<Vector3ic> result = new HashSet<>();
+        for (int i = 0; i < map.size(); i++) {
+            result.add(unpack(map.getPosition(i)));
+        }
+        return result;
+    }
+
+    private static Vector3i unpack(long position) {
+        return new Vector3i(TreeBlockMap.unpackX(position), TreeBlockMap.unpackY(position), TreeBlockMap.unpackZ(position));
+    }
+
+    /**
+     * Branch of the built tree, which ignores the elements after its trim index, like a tree cut at that element.
+     */
+    private static final class Branch {
+        private final TreeStructure structure;
+        private final TreeStructure.BranchLocation location;
+        private final int trimIndex;
+
+        private Branch(TreeStructure structure, TreeStructure.BranchLocation location, int trimIndex) {
+            this.structure = structure;
+            this.location = location;
+            this.trimIndex = trimIndex;
+        }
+
+        private Branch branch(int startIndex, int subBranchTrimIndex) {
+            boolean kept = location != null && startIndex <= trimIndex;
+            return new Branch(structure, kept ? location.addBranch(startIndex) : null, subBranchTrimIndex);
+        }
+
+        private void main(int index, int x, int y, int z, TreeBlockDefinition definition) {
+            if (location != null && index <= trimIndex) {
+                location.setMainBlock(index, TreeBlockMap.pack(x, y, z));
+            }
+            block(index, x, y, z, definition);
+        }
+
+        private void block(int index, int x, int y, int z, TreeBlockDefinition definition) {
+            if (location != null && index <= trimIndex) {
+                location.addTreeBlock(index, TreeBlockMap.pack(x, y, z), structure.getPaletteIndex(definition));
+            }
+        }
+    }
+}
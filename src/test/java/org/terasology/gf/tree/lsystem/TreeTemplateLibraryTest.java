@@ -0,0 +1,32 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+package org.terasology.gf.tree.lsystem;
+
+import org.joml.Vector3i;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class TreeTemplateLibraryTest {
+    @Test
+    public void testTemplatesAreBuiltOnce() {
+        AtomicInteger buildCount = new AtomicInteger();
+        TreeTemplateLibrary library = new TreeTemplateLibrary(3, 2, (generation, variant) -> {
+            buildCount.incrementAndGet();
+            TreeStructure treeStructure = new TreeStructure(new Vector3i());
+            treeStructure.complete();
+            return new TreeTemplateLibrary.TreeTemplate(new LSystemTreeComponent(), CompiledAxion.parse("A"), treeStructure);
+        });
+
+        TreeTemplateLibrary.TreeTemplate template = library.getTemplate(2, 1);
+        assertEquals(1, buildCount.get());
+        assertSame(template, library.getTemplate(2, 1));
+
+        library.prepare(Runnable::run);
+        assertEquals(6, buildCount.get());
+        assertSame(template, library.getTemplate(2, 1));
+    }
+}
@@ -0,0 +1,23 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.gf.util;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.utilities.random.FastRandom;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ReseedableRandomTest {
+    @Test
+    public void testSameSequenceAsFastRandom() {
+        ReseedableRandom random = new ReseedableRandom(0);
+        for (long seed : new long[]{1, 42, Float.floatToRawIntBits(0.37f), -7}) {
+            random.setSeed(seed);
+            FastRandom expected = new FastRandom(seed);
+            for (int i = 0; i < 100; i++) {
+                assertEquals(expected.nextInt(), random.nextInt());
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+// Copyright 2021 The Terasology Foundation
+// SPDX-License-Identifier: Apache-2.0
+
+package org.terasology.gf.util;
+
+import org.junit.jupiter.api.Test;
+import org.terasology.engine.utilities.random.FastRandom;
+import org.terasology.engine.utilities.random.Random;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WeightedSamplerTest {
+    @Test
+    public void testEmpty() {
+        WeightedSampler<String> sampler = WeightedSampler.<String>builder()
+                .add("never", 0)
+                .build();
+        assertTrue(sampler.isEmpty());
+        assertNull(sampler.sample(new FastRandom(1)));
+    }
+
+    @Test
+    public void testDistribution() {
+        WeightedSampler<String> sampler = WeightedSampler.<String>builder()
+                .add("common", 6)
+                .add("uncommon", 3)
+                .add("rare", 1)
+                .add("never", 0)
+                .build();
+        assertFalse(sampler.isEmpty());
+
+        Map<String, Integer> counts = new HashMap<>();
+        Random random = new FastRandom(123);
+        int samples = 100000;
+        for (int i = 0; i < samples; i++) {
+            counts.merge(sampler.sample(random), 1, Integer::sum);
+        }
+        assertEquals(3, counts.size());
+        assertEquals(0.6, counts.get("common") / (double) samples, 0.01);
+        assertEquals(0.3, counts.get("uncommon") / (double) samples, 0.01);
+        assertEquals(0.1, counts.get("rare") / (double) samples, 0.01);
+    }
+
+    @Test
+    public void testChoosesInCumulativeOrder() {
+        float[] weights = {0.3f, 1.7f, 0.05f, 2.2f, 0.9f};
+        WeightedSampler.Builder<Integer> builder = WeightedSampler.builder();
+        float totalWeight = 0;
+        for (int i = 0; i < weights.length; i++) {
+            builder.add(i, weights[i]);
+            totalWeight += weights[i];
+        }
+        WeightedSampler<Integer> sampler = builder.build();
+
+        for (long seed = 0; seed < 1000; seed++) {
+            float position = new FastRandom(seed).nextFloat() * totalWeight;
+            Integer expected = null;
+            for (int i = 0; i < weights.length; i++) {
+                if (position < weights[i]) {
+                    expected = i;
+                    break;
+                }
+                position -= weights[i];
+            }
+            assertEquals(expected, sampler.sample(new FastRandom(seed)));
+        }
+    }
+}